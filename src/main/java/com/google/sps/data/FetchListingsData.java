@@ -13,46 +13,56 @@
 // limitations under the License.
 package com.google.sps.data;
 
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
 import java.util.List;
 
 /**Holds data needed for fetchListings. Can be edited as more information is needed*/
 public class FetchListingsData {
   private List<Listing> listings;
   private String userLocation;
+  // Opaque token used to fetch the next page of listings, or "" if there are 
+  //     no more listings to fetch.
+  private String cursor = "";
 
+  /**
+   * Creates the data of a page of listings.
+   *
+   * @param listings the page of listings.
+   * @param userLocation the display name of the user's location (see 
+   *     GeocodeOBJ.getDisplayName) or "".
+   */
   public FetchListingsData(List<Listing> listings, String userLocation) {
     this.listings = listings;
-    
-    userLocation = userLocation.replace(", USA", "").replaceAll("[0-9]", "");
-    int commaIndex = userLocation.indexOf(",");
-    
-    if (moreCommas(userLocation)) {
-      this.userLocation = userLocation.substring(commaIndex + 1, userLocation.length());    
-    } else {
-      this.userLocation = userLocation;
-    }
+    this.userLocation = userLocation;
+  }
+
+  public FetchListingsData(List<Listing> listings, String userLocation,
+      String cursor) {
+    this(listings, userLocation);
+    this.cursor = cursor;
   }
 
   /**
-   *  Checks to see if there are 2 or more commas in the string
+   * Writes this FetchListingsData as JSON, one listing at a time, so that the 
+   *     whole JSON never has to be held in memory.
+   * The JSON is the same as the JSON Gson creates for this object.
    *
-   * @param input String getting checked
-   * @return true if 2 or more commas are present
+   * @param gson the Gson used to turn each listing into JSON.
+   * @param jsonWriter the JsonWriter to write the JSON to.
    */
-  private boolean moreCommas(String input) {
-    int count = 0;
-    
-    for (int i  = 0; i < input.length(); i++) {
-      if (input.charAt(i) == ',') {
-        count++;
-      }
-
-      if(count == 2) {
-        return true;  
-      }
+  public void writeJson(Gson gson, JsonWriter jsonWriter) throws IOException {
+    jsonWriter.beginObject();
+    jsonWriter.name("listings");
+    jsonWriter.beginArray();
+    for (Listing listing : listings) {
+      gson.toJson(listing, Listing.class, jsonWriter);
     }
-
-    return false;
+    jsonWriter.endArray();
+    jsonWriter.name("userLocation").value(userLocation);
+    jsonWriter.name("cursor").value(cursor);
+    jsonWriter.endObject();
   }
 
 }
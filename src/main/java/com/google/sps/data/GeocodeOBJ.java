@@ -0,0 +1,149 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.gson.annotations.SerializedName;
+
+/** Converts JSON Geocoding Object into Java Object */
+public class GeocodeOBJ {
+  @SerializedName("results")
+  private Result[] results;
+
+  @SerializedName("status")
+  private String status;
+
+  // The short name of the location shown to the user, created once
+  private transient String displayName;
+
+  private static class Result {
+    @SerializedName("formatted_address")
+    public String formattedAddress;
+
+    @SerializedName("geometry")
+    public Geometry geometry;
+  }
+
+  private static class Geometry {
+    @SerializedName("location")
+    public LatLng location;
+  }
+
+  private static class LatLng {
+    @SerializedName("lat")
+    public double lat;
+
+    @SerializedName("lng")
+    public double lng;
+  }
+
+  /**
+   * Returns true if the Geocoding API found the location.
+   *
+   * @return a boolean that states whether there is a result.
+   */
+  public boolean isFound() {
+    return "OK".equals(status) && results != null && results.length > 0 
+        && results[0].geometry != null && results[0].geometry.location != null;
+  }
+
+  /**
+   * Returns true if the Geocoding API answered the request, whether or not it 
+   *     found the location. Other statuses, like going over the query limit, 
+   *     are temporary.
+   *
+   * @return a boolean that states whether the response can be reused.
+   */
+  public boolean isAnswered() {
+    return "OK".equals(status) || "ZERO_RESULTS".equals(status);
+  }
+
+  /**
+   * Returns the latitude of the best match for the location.
+   *
+   * @return the latitude in degrees.
+   */
+  public double getLatitude() {
+    return results[0].geometry.location.lat;
+  }
+
+  /**
+   * Returns the longitude of the best match for the location.
+   *
+   * @return the longitude in degrees.
+   */
+  public double getLongitude() {
+    return results[0].geometry.location.lng;
+  }
+
+  /**
+   * Returns the address of the best match for the location, formatted the 
+   *     same way as the Distance Matrix API formats addresses.
+   *
+   * @return the formatted address or "" if there is none.
+   */
+  public String getFormattedAddress() {
+    if (results[0].formattedAddress == null) {
+      return "";
+    }
+
+    return results[0].formattedAddress;
+  }
+
+  /**
+   * Returns the short name of the best match for the location shown to the 
+   *     user, like "Mountain View, CA" for 
+   *     "1600 Amphitheatre Pkwy, Mountain View, CA 94043, USA".
+   * Drops the country of US addresses, the street of full addresses, and 
+   *     numbers.
+   *
+   * @return the display name or "" if there is none.
+   */
+  public String getDisplayName() {
+    if (displayName == null) {
+      displayName = createDisplayName(getFormattedAddress());
+    }
+
+    return displayName;
+  }
+
+  /**
+   * Creates the short name of an address shown to the user.
+   *
+   * @param address a formatted address.
+   * @return the display name of the address.
+   */
+  private static String createDisplayName(String address) {
+    if (address.endsWith(", USA")) {
+      address = address.substring(0, address.length() - ", USA".length());
+    }
+
+    // An address with two or more commas starts with a street
+    int start = 0;
+    int commaIndex = address.indexOf(',');
+    if (commaIndex >= 0 && address.indexOf(',', commaIndex + 1) >= 0) {
+      start = commaIndex + 1;
+    }
+
+    StringBuilder displayName = new StringBuilder(address.length() - start);
+    for (int i = start; i < address.length(); i++) {
+      char c = address.charAt(i);
+      if (c < '0' || c > '9') {
+        displayName.append(c);
+      }
+    }
+
+    return displayName.toString().trim();
+  }
+}
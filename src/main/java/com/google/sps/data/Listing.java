@@ -15,13 +15,10 @@
 package com.google.sps.data;
 
 import com.google.appengine.api.datastore.DatastoreService;
-import com.google.appengine.api.datastore.DatastoreServiceFactory;
 import com.google.appengine.api.datastore.Entity;
 import com.google.appengine.api.datastore.Key;
 import com.google.appengine.api.datastore.KeyFactory;
-import com.google.appengine.api.users.UserService;
-import com.google.appengine.api.users.UserServiceFactory;
-import com.google.sps.utility.AuthenticationUtility;
+import com.google.sps.utility.Geocoder;
 import java.lang.Math;
 import java.lang.Long;
 import java.sql.Timestamp;
@@ -32,20 +29,35 @@ import java.util.List;
 /** A listing */ 
 public final class Listing {
 
+  // The property of a listing Entity that stores its reputation score, so 
+  //     that listings can be sorted by reputation in a query
+  public static final String REPUTATION_SCORE_PROPERTY = "reputationScore";
+  // The z-score of the confidence the reputation score is a lower bound 
+  //     with, which is 95%
+  private static final double REPUTATION_CONFIDENCE_Z = 1.96;
+  // The reputation score is between 0 and 1, so it is scaled to be 
+  //     comparable to the distance score when they are weighted together
+  private static final double REPUTATION_SCALE = 100;
+
   private final String dateCreated;
   private final String description;
   public int distanceScore;
   private final String howToHelp;
   private final String imageURL;
+  // True if this Listing only has the fields shown on a listing preview
+  private boolean isCard = false;
   private boolean isOwnerUser = false;
   private String key;
+  // The coordinates of the location, or null if it could not be found
+  private Double latitude = null;
+  private Double longitude = null;
   private final String location;
   private final String name;
   private final String tags;
-  public final Long timestamp;
+  public final long timestamp;
   private final String type;
-  public Integer reputationScore;
-  public Integer reputationAndDistanceScore;
+  public Double reputationScore;
+  public int reputationAndDistanceScore;
   private final int upvotes;
   private final int downvotes;
   private final int views;
@@ -62,7 +74,7 @@ public final class Listing {
     this.imageURL = imageURL;
     this.location = location;
     this.name = name;
-    this.timestamp = new Long(timestamp);
+    this.timestamp = timestamp;
     
     // turn long of timestamp into Date object
     String dateCreated = timestampToDate(timestamp);
@@ -85,7 +97,7 @@ public final class Listing {
     this.key = "";
     this.location = location;
     this.name = name;
-    this.timestamp = new Long(timestamp);
+    this.timestamp = timestamp;
     
     // turn int of timestamp into Date object
     String dateCreated = timestampToDate(timestamp);
@@ -127,15 +139,17 @@ public final class Listing {
 
 
   /**
-   * Creates a Listing object from an Entity object that represents a listing
+   * Creates a Listing object from an Entity object that represents a listing 
+   *     and update its variables that say whether or not the user owns this 
+   *     listing and how the user voted on it.
+   * Does not connect to the back end.
    *
    * @param entity the entity that represents a listing
-   * @return a Listing with all of the properties from the Entity
+   * @param viewer the user viewing this listing.
+   * @return a Listing with all of the properties from the Entity and the 
+   *     viewer's ownership and vote.
    */
-  public static Listing createListing(Entity entity) {
-    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-    UserService userService = UserServiceFactory.getUserService();
-
+  public static Listing createListing(Entity entity, ViewerContext viewer) {
     String description = (String) entity.getProperty("description");
     String howToHelp = (String) entity.getProperty("howToHelp");
     String imageURL = (String) entity.getProperty("imageURL");
@@ -149,80 +163,54 @@ public final class Listing {
     int upvotes = Math.toIntExact((long) entity.getProperty("upvotes"));
     int downvotes = Math.toIntExact((long) entity.getProperty("downvotes"));
     int views = Math.toIntExact((long) entity.getProperty("views"));
-    String vote = getVoteForListing(datastore, userService, key);
+    String vote = viewer.getVoteForListing(key);
     String website = (String) entity.getProperty("website");
 
-    return new Listing(description, howToHelp, imageURL, key, location, name,
-        tags, timestamp, type, upvotes, downvotes, views, vote, website);
-  }
-
-  /**
-   * Creates a Listing object from an Entity object that represents a listing 
-   *     and update its variable that says whether or not the user owns this 
-   *     listing.
-   *
-   * @param entity the entity that represents a listing
-   * @param isOwnerUser a boolean that states whether a user owns a listing or not.
-   * @return a Listing with all of the properties from the Entity and a 
-   *     variable that says whether or not the user owns this listing.
-   */
-  public static Listing createListing(Entity entity, boolean isOwnerUser) {
-    Listing listing = createListing(entity);
-    listing.setIsOwnerUser(isOwnerUser);
+    Listing listing = new Listing(description, howToHelp, imageURL, key, 
+        location, name, tags, timestamp, type, upvotes, downvotes, views, vote, 
+        website);
+    listing.setIsOwnerUser(viewer.ownsListing(entity));
+    listing.setCoordinates(entity);
+    listing.reputationScore = getReputationScore(entity);
 
     return listing;
   }
 
   /**
-   * Creates a Listing object from an Entity object that represents a listing 
-   *     and update its variable that says whether or not the user owns this 
-   *     listing.
+   * Creates a Listing that only has the fields shown on a listing preview from 
+   *     an Entity returned by a projection query (see ListingCardProjection).
+   * The fields that are not projected, like the description, are left empty.
+   * Does not connect to the back end.
    *
-   * @param entity the entity that represents a listing
-   * @param userEmail the email of the user,
-   * @return a Listing with all of the properties from the Entity and a 
-   *     variable that says whether or not the user owns this listing.
+   * @param entity the projected entity that represents a listing
+   * @param type the type of the listing, or null if the type was projected.
+   * @param viewer the user viewing this listing.
+   * @return a Listing with the preview properties from the Entity and the 
+   *     viewer's ownership and vote.
    */
-  public static Listing createListing(Entity entity, String userEmail) {
-    String ownersEmail = (String) entity.getProperty(
-        "ownersEmail");
-    boolean isOwnerUser = ownersEmail.equals(userEmail);
-
-    return createListing(entity, isOwnerUser);
-  }
+  public static Listing createListingCard(Entity entity, String type, 
+      ViewerContext viewer) {
+    String imageURL = (String) entity.getProperty("imageURL");
+    String key = (String) KeyFactory.keyToString(
+        entity.getKey());
+    String location = (String) entity.getProperty("location");
+    String name = (String) entity.getProperty("name");
+    long timestamp = (long) entity.getProperty("timestamp");
+    if (type == null) {
+      type = (String) entity.getProperty("type");
+    }
+    int upvotes = Math.toIntExact((long) entity.getProperty("upvotes"));
+    int downvotes = Math.toIntExact((long) entity.getProperty("downvotes"));
+    String vote = viewer.getVoteForListing(key);
 
-  /**
-   * Increment a specified property in a listing entity and update it in
-   * datastore.
-   *
-   * @param datastore an instance of datastore service
-   * @param listingKey a key associated with a listing entity
-   * @param property string of the name of the property to increment
-   */
-  public static void incrementListingProperty(DatastoreService datastore,
-      Key listingKey, String property) throws Exception {
-    Entity listingEntity = datastore.get(listingKey);
-    long propertyValue = (long) listingEntity.getProperty(property);
-    propertyValue++;
-    listingEntity.setProperty(property, propertyValue);
-    datastore.put(listingEntity);
-  }
+    Listing listing = new Listing("", "", imageURL, key, location, name, "", 
+        timestamp, type, upvotes, downvotes, 0, vote, "");
+    listing.isCard = true;
+    listing.setIsOwnerUser(viewer.ownsListing(entity));
+    listing.setCoordinates(entity);
+    listing.reputationScore = getReputationScore(entity);
 
-  /**
-   * Decrement a specified property in a listing entity and update it in
-   * datastore.
-   *
-   * @param datastore an instance of datastore service
-   * @param listingKey a key associated with a listing entity
-   * @param property string of the name of the property to decrement
-   */
-  public static void decrementListingProperty(DatastoreService datastore,
-      Key listingKey, String property) throws Exception {
-    Entity listingEntity = datastore.get(listingKey);
-    long propertyValue = (long) listingEntity.getProperty(property);
-    propertyValue--;
-    listingEntity.setProperty(property, propertyValue);
-    datastore.put(listingEntity);
+    return listing;
   }
 
   /**
@@ -230,13 +218,14 @@ public final class Listing {
    *
    * @param datastore the DatastoreService that connects to the back end.
    * @param listingEntityKey the key of an entity that represents a listing
+   * @param viewer the user viewing this listing.
    * @return a Listing with all of the properties from the Entity
    */
   public static Listing createListing(DatastoreService datastore, 
-      Key listingEntityKey) throws Exception {
+      Key listingEntityKey, ViewerContext viewer) throws Exception {
     Entity listingEntity = datastore.get(listingEntityKey);
 
-    return createListing(listingEntity);
+    return createListing(listingEntity, viewer);
   }  
 
   /**
@@ -245,13 +234,14 @@ public final class Listing {
    * @param datastore the DatastoreService that connects to the back end.
    * @param listingEntityKeyString the string of the key of an entity that 
    *     represents a listing
+   * @param viewer the user viewing this listing.
    * @return a Listing with all of the properties from the Entity
    */
   public static Listing createListing(DatastoreService datastore, 
-      String listingEntityKeyString) throws Exception {
+      String listingEntityKeyString, ViewerContext viewer) throws Exception {
     Key listingEntityKey = KeyFactory.stringToKey(listingEntityKeyString);
 
-    return createListing(datastore, listingEntityKey);
+    return createListing(datastore, listingEntityKey, viewer);
   }  
 
   /**
@@ -260,69 +250,83 @@ public final class Listing {
    * @param datastore the DatastoreService that connects to the back end.
    * @param listingEntityKeysStringArray the String[] of listing entity key
    *     Strings that will each be used to create a Listing.
+   * @param viewer the user viewing these listings.
    * @return List<Listing> from the String[] of listing entity key strings.
    */
   public static List<Listing> createListings(DatastoreService datastore, 
-      String[] listingEntityKeysStringArray) throws Exception {
+      String[] listingEntityKeysStringArray, ViewerContext viewer) 
+      throws Exception {
     List<Listing> listings = new ArrayList<Listing>();
     for (String listingEntityKeyString : listingEntityKeysStringArray) {
-      listings.add(createListing(datastore, listingEntityKeyString));
+      listings.add(createListing(datastore, listingEntityKeyString, viewer));
     }
 
     return listings;
   }
 
   /**
-   * Turns a List<Entity> into a List<Listing> with an updated isOwnerUser 
-   *     variable.
+   * Turns a List<Entity> into a List<Listing> with updated isOwnerUser and 
+   *     vote variables.
    *
    * @param listingEntities the list of listing Entities to turn into Listings.
-   * @param userEmail the email of the user.
+   * @param viewer the user viewing these listings.
    * @return List<Listing> from the List of listing Entities.
    */
   public static List<Listing> createListings(List<Entity> listingEntities, 
-      String userEmail) throws Exception {
+      ViewerContext viewer) {
     List<Listing> listings = new ArrayList<Listing>();
     for (Entity listingEntity : listingEntities) {
-      listings.add(createListing(listingEntity, userEmail));
+      listings.add(createListing(listingEntity, viewer));
     }
 
     return listings;
   }
 
   /**
-   * Get a string representing the vote the current user has on a listing entity.
+   * Return location of listing
+   * 
+   * @return location of listing
+   */
+  public String getLocation(){
+    return location;
+  }
+
+  /**
+   * Sets the coordinates of this Listing to the coordinates stored in a 
+   *     listing Entity.
    *
-   * @param datastore a datastore service instance
-   * @param userService a user service instance
-   * @param listingKeyString a string of a listing entity's key
-   * @return a string representing the vote the current user has on a listing entity,
-   *     can be upvote, downvote, or neutral
+   * @param entity the entity that represents this listing.
    */
-  private static String getVoteForListing(DatastoreService datastore, UserService userService, String listingKeyString) {
-    if (userService.isUserLoggedIn()) {
-      Entity currentUser = AuthenticationUtility.getCurrentUserEntity(datastore, userService);
-      
-      String upvotedListings = User.getListingKeysAsString(currentUser, "upvotedListingKeys");
-      if (upvotedListings.contains(listingKeyString)) {
-        return "upvote";
-      }
+  private void setCoordinates(Entity entity) {
+    this.latitude = (Double) entity.getProperty(Geocoder.LATITUDE_PROPERTY);
+    this.longitude = (Double) entity.getProperty(Geocoder.LONGITUDE_PROPERTY);
+  }
 
-      String downvotedListings = User.getListingKeysAsString(currentUser, "downvotedListingKeys");
-      if (downvotedListings.contains(listingKeyString)) {
-        return "downvote";
-      }
-    }
-    return "neutral";
+  /**
+   * Returns true if the coordinates of this listing's location are known.
+   *
+   * @return a boolean that states whether this listing has coordinates.
+   */
+  public boolean hasCoordinates() {
+    return latitude != null && longitude != null;
   }
 
   /**
-   * Return location of listing
-   * 
-   * @return location of listing
+   * Returns the latitude of this listing's location.
+   *
+   * @return the latitude in degrees or null if it is not known.
    */
-  public String getLocation(){
-    return location;
+  public Double getLatitude() {
+    return latitude;
+  }
+
+  /**
+   * Returns the longitude of this listing's location.
+   *
+   * @return the longitude in degrees or null if it is not known.
+   */
+  public Double getLongitude() {
+    return longitude;
   }
 
   /**
@@ -343,6 +347,25 @@ public final class Listing {
     return upvotes;
   }
 
+  /**
+   * Gets the time this listing was created.
+   *
+   * @return long of the creation time in milliseconds since the epoch
+   */
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  /**
+   * Gets the score the recommended sort ranks this listing by, which is set 
+   *     by generateReputationAndDistanceScore.
+   *
+   * @return int of the weighted reputation and distance score
+   */
+  public int getReputationAndDistanceScore() {
+    return reputationAndDistanceScore;
+  }
+
   /**
    * Gets a listing's current number of downvotes
    *
@@ -363,25 +386,93 @@ public final class Listing {
   }
 
   /**
-   * Generates a reputation score for a listing and stores it
-   * in reputationScore.
+   * Sets the vote the current user has on this Listing.
+   *
+   * @param vote "upvote", "downvote", or "neutral".
    */
-  public void generateReputationScore() {
-    final double WEIGHT_1 = .20;
-    final double WEIGHT_2 = .80;
+  public void setVote(String vote) {
+    this.vote = vote;
+  }
+
+  /**
+   * Returns the reputation score of this Listing, which is read from the 
+   *     listing Entity when the Listing is created. Listings that were not 
+   *     created from an Entity, like previews, compute it from their votes.
+   *
+   * @return the reputation score, between 0 and 1.
+   */
+  public double getReputationScore() {
+    if (reputationScore == null) {
+      reputationScore = computeReputationScore(getUpvotes(), getDownvotes());
+    }
 
-    int upvotes = (int) getUpvotes();
-    int downvotes = (int) getDownvotes();
+    return reputationScore;
+  }
 
+  /**
+   * Computes the reputation score of a listing from its votes, which is the 
+   *     lower bound of the Wilson score interval of the fraction of votes 
+   *     that are upvotes. A listing with few votes scores lower than a 
+   *     listing with the same fraction of upvotes out of many votes.
+   * Takes O(1) time, so it is computed whenever the votes change and stored 
+   *     with the listing (see updateReputationScore).
+   *
+   * @param upvotes the number of upvotes of the listing.
+   * @param downvotes the number of downvotes of the listing.
+   * @return the reputation score, between 0 and 1, which is 0 for a listing 
+   *     with no upvotes.
+   */
+  public static double computeReputationScore(long upvotes, long downvotes) {
+    // The counts can only be negative while votes are being summed
+    upvotes = Math.max(upvotes, 0);
+    downvotes = Math.max(downvotes, 0);
     if (upvotes == 0) {
-      this.reputationScore = 0;
+      return 0;
     }
 
-    double upvotePercentage = (double) upvotes / (upvotes + downvotes);
-    int reputationScore = (int) ((upvotes * WEIGHT_1)
-        + ((upvotes * upvotePercentage) * WEIGHT_2));
+    double voteCount = upvotes + downvotes;
+    double upvoteFraction = upvotes / voteCount;
+    double zSquared = REPUTATION_CONFIDENCE_Z * REPUTATION_CONFIDENCE_Z;
+    double center = upvoteFraction + zSquared / (2 * voteCount);
+    double margin = REPUTATION_CONFIDENCE_Z * Math.sqrt(
+        (upvoteFraction * (1 - upvoteFraction) 
+            + zSquared / (4 * voteCount)) / voteCount);
 
-    this.reputationScore = new Integer(reputationScore);
+    return Math.max(0, (center - margin) / (1 + zSquared / voteCount));
+  }
+
+  /**
+   * Returns the reputation score stored in a listing Entity, or computes it 
+   *     from the Entity's votes if the Entity does not have it, like 
+   *     projected Entities that are not sorted by reputation.
+   *
+   * @param listingEntity the entity that represents a listing.
+   * @return the reputation score of the listing, between 0 and 1.
+   */
+  public static double getReputationScore(Entity listingEntity) {
+    Object reputationScore = 
+        listingEntity.getProperty(REPUTATION_SCORE_PROPERTY);
+    if (reputationScore instanceof Double) {
+      return (Double) reputationScore;
+    }
+
+    return computeReputationScore(
+        ((Number) listingEntity.getProperty("upvotes")).longValue(), 
+        ((Number) listingEntity.getProperty("downvotes")).longValue());
+  }
+
+  /**
+   * Stores the reputation score of a listing Entity from its votes in the 
+   *     Entity. Has to be called whenever the votes of a listing change.
+   *
+   * @param listingEntity the entity that represents a listing.
+   */
+  public static void updateReputationScore(Entity listingEntity) {
+    long upvotes = ((Number) listingEntity.getProperty("upvotes")).longValue();
+    long downvotes = 
+        ((Number) listingEntity.getProperty("downvotes")).longValue();
+    listingEntity.setProperty(REPUTATION_SCORE_PROPERTY, 
+        computeReputationScore(upvotes, downvotes));
   }
 
  /**
@@ -397,7 +488,7 @@ public final class Listing {
       }
       this.distanceScore = distance;
     } else {
-      if (reputationScore == 0) {
+      if (getReputationScore() == 0) {
         this.distanceScore = 50;
       } else {
         this.distanceScore = 75;
@@ -414,7 +505,7 @@ public final class Listing {
     final double REPUTATION_WEIGHT = 0.85;
      
     this.reputationAndDistanceScore = (int)(this.distanceScore * DISTANCE_WEIGHT) +
-        (int)((this.reputationScore.intValue()) * REPUTATION_WEIGHT);
+        (int)(getReputationScore() * REPUTATION_SCALE * REPUTATION_WEIGHT);
   }
   
 }
@@ -0,0 +1,97 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.PropertyProjection;
+import com.google.appengine.api.datastore.Query;
+import com.google.sps.utility.Geocoder;
+
+/**
+ * Turns a listing query into a projection query that only returns the small 
+ *     properties shown on a listing preview, so that search results do not 
+ *     load properties like description, tags, howToHelp, and website. The 
+ *     description is fetched with the rest of the listing when its detailed 
+ *     view is opened (see FetchListingDetails).
+ * Every combination of filters used with a projection needs a composite index 
+ *     in datastore-indexes.xml, which has a row for every value of every 
+ *     projected property. So projections are only used for queries that do 
+ *     not filter by keywords or geocells, which have many values each.
+ * Projection queries skip Entities that do not have every projected property, 
+ *     so listings created before a property was added have to be backfilled 
+ *     (see BackfillListings).
+ */
+public final class ListingCardProjection {
+
+  // The properties of a listing Entity shown on a listing preview
+  private static final String[] CARD_STRING_PROPERTIES = {"imageURL", 
+      "location", "name", "ownersEmail"};
+  private static final String[] CARD_LONG_PROPERTIES = {"downvotes", 
+      "timestamp", "upvotes"};
+  // The coordinates are used to measure the distance to the user
+  private static final String[] CARD_DOUBLE_PROPERTIES = {
+      Geocoder.LATITUDE_PROPERTY, Geocoder.LONGITUDE_PROPERTY};
+
+  // The type every listing of the query is filtered to, or null if the type 
+  //     is projected
+  private final String type;
+  // The double property the query is sorted by, like the reputation score, or 
+  //     null if it is not sorted
+  private final String sortProperty;
+
+  public ListingCardProjection(String type, String sortProperty) {
+    this.type = type;
+    this.sortProperty = sortProperty;
+  }
+
+  /**
+   * Adds the properties shown on a listing preview to a query.
+   * Datastore cannot project a property that is used in an equality filter, 
+   *     so the type is only projected if the query does not filter by type.
+   *
+   * @param query the query that returns listing Entities.
+   */
+  public void addProjections(Query query) {
+    for (String property : CARD_STRING_PROPERTIES) {
+      query.addProjection(new PropertyProjection(property, String.class));
+    }
+    for (String property : CARD_LONG_PROPERTIES) {
+      query.addProjection(new PropertyProjection(property, Long.class));
+    }
+    for (String property : CARD_DOUBLE_PROPERTIES) {
+      query.addProjection(new PropertyProjection(property, Double.class));
+    }
+    if (type == null) {
+      query.addProjection(new PropertyProjection("type", String.class));
+    }
+
+    // The sort property is needed to merge the results with other queries
+    if (sortProperty != null) {
+      query.addProjection(new PropertyProjection(sortProperty, Double.class));
+    }
+  }
+
+  /**
+   * Creates a Listing with the fields shown on a listing preview from an 
+   *     Entity returned by a query with these projections.
+   *
+   * @param entity the projected entity that represents a listing.
+   * @param viewer the user viewing this listing.
+   * @return a Listing with the preview properties from the Entity.
+   */
+  public Listing createListing(Entity entity, ViewerContext viewer) {
+    return Listing.createListingCard(entity, type, viewer);
+  }
+}
@@ -18,26 +18,21 @@ import com.google.appengine.api.datastore.DatastoreService;
 import com.google.appengine.api.datastore.Entity;
 import com.google.appengine.api.datastore.FetchOptions;
 import com.google.appengine.api.datastore.Key;
-import com.google.appengine.api.datastore.KeyFactory;
 import com.google.appengine.api.datastore.PreparedQuery;
 import com.google.appengine.api.datastore.Query;
 import com.google.appengine.api.datastore.Query.Filter;
 import com.google.appengine.api.datastore.Query.FilterOperator;
 import com.google.appengine.api.datastore.Query.FilterPredicate;
 import com.google.appengine.api.datastore.Query.SortDirection;
-import com.google.appengine.api.users.UserService;
 import com.google.sps.data.Listing;
-import com.google.sps.utility.AuthenticationUtility;
-import com.google.sps.utility.EntityUtility;
 import com.google.sps.utility.ListingConstants;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 /** A user */ 
 public final class User {
 
-  public static final String DELIMITER = " "; 
-
   private final String bio;
   private final String email;
   private final String username;
@@ -54,25 +49,27 @@ public final class User {
   }
 
   /**
-   * Used to transform a user Entity's String of listingkeys into a 
-   *     List<Listing>.
+   * Returns the listings a user upvoted, the most recently upvoted listings 
+   *     first. Listings that were deleted are left out.
    *
    * @param datastore the DatastoreService that connects to the back end.
-   * @param entity An Entity that has a ListingKeys property
-   * @param property the name of the ListingKeys property
-   * @return a List<Listing>
+   * @param userKey the key of the user Entity.
+   * @param viewer the user viewing these listings.
+   * @return a List<Listing> of the upvoted listings.
    */
-  private static List<Listing> getListings(DatastoreService datastore,   
-      Entity entity, String property) throws Exception {
-    String[] listingKeyStringArray = EntityUtility.getEntityKeyStrings(
-        DELIMITER, entity, property);
-
-    List<Listing> listings = new ArrayList<Listing>();
-    if (listingKeyStringArray.length > 0) {
-      listings = Listing.createListings(datastore, listingKeyStringArray);
+  private static List<Listing> getUpvotedListings(DatastoreService datastore,
+      Key userKey, ViewerContext viewer) {
+    List<Key> listingKeys = Vote.getUpvotedListingKeys(datastore, userKey);
+    Map<Key, Entity> listingEntities = datastore.get(listingKeys);
+
+    List<Entity> upvotedListingEntities = new ArrayList<Entity>();
+    for (Key listingKey : listingKeys) {
+      if (listingEntities.containsKey(listingKey)) {
+        upvotedListingEntities.add(listingEntities.get(listingKey));
+      }
     }
 
-    return listings;
+    return Listing.createListings(upvotedListingEntities, viewer);
   }
 
   /**
@@ -88,9 +85,16 @@ public final class User {
     String email = (String) entity.getProperty("email");
     String username = (String) entity.getProperty("username");
 
-    List<Listing> createdListings = getCreatedListings(datastore, email);
-    List<Listing> upvotedListings = getListings(datastore, entity, 
-        "upvotedListingKeys");
+    // This user is the one viewing their listings. Their votes on both lists 
+    //     are looked up in one batch.
+    ViewerContext viewer = ViewerContext.createViewerContext(datastore, 
+        entity);
+    List<Listing> createdListings = getCreatedListings(datastore, viewer);
+    List<Listing> upvotedListings = getUpvotedListings(datastore, 
+        entity.getKey(), viewer);
+    List<Listing> listings = new ArrayList<Listing>(createdListings);
+    listings.addAll(upvotedListings);
+    viewer.applyVotes(listings);
 
     return new User(bio, email, username, createdListings, 
         upvotedListings);
@@ -128,16 +132,16 @@ public final class User {
    *     timestamp).
    *
    * @param datastore the DatastoreService that connects to the back end.
-   * @param userEmail the email of the current user.
+   * @param viewer the current user.
    * @return a User's created Listings, sorted in descending order of
    *     their timestamp.
    */
   public static List<Listing> getCreatedListings(DatastoreService datastore,
-      String userEmail) throws Exception {
+      ViewerContext viewer) {
     List<Entity> listingEntities = getCreatedListingEntities(datastore,
-        userEmail);
+        viewer.getEmail());
 
-    return Listing.createListings(listingEntities, userEmail);
+    return Listing.createListings(listingEntities, viewer);
   }
 
   /**
@@ -153,130 +157,7 @@ public final class User {
     newUserEntity.setProperty("email", userEmail);
     newUserEntity.setProperty("username", "");
     newUserEntity.setProperty("bio", "");
-    newUserEntity.setProperty("createdListingKeys", " ");
-    newUserEntity.setProperty("upvotedListingKeys", " ");
-    newUserEntity.setProperty("downvotedListingKeys", " ");
 
     return newUserEntity;
   }
-
-  /**
-   * Add a specified listing key to the beginning of a userEntity property.
-   *
-   * @param datastore a datastore service instance
-   * @param userEntity an entity representing a User
-   * @param listingKey the key representing a specific Listing entity
-   * @param property the property to append the key to 
-   */
-  public static void addListingKeyToUserEntity(DatastoreService datastore,
-      Entity userEntity, Key listingKey, String property) {
-    // Get the string of listing keys from userEntity's specified property
-    // This should most likely be createdListingKeys, upvotedListingKeys,
-    //    or downvotedListingKeys
-    String listingKeysString = getListingKeysAsString(userEntity, property);
-    
-    // Append a new listing key to the beginning of listingKeysString and update userEntity.
-    listingKeysString = KeyFactory.keyToString(listingKey) + " " + 
-        listingKeysString;
-    userEntity.setProperty(property, listingKeysString);
-    datastore.put(userEntity);
-  }
-
-  /**
-   * Remove a specified listing key from a property in a userEntity.  
-   *
-   * @param datastore a datastore service instance
-   * @param userEntity an entity representing a User
-   * @param listingKey the key representing a specific Listing entity
-   * @param property the property to remove the key from 
-   */
-  public static void removeListingKeyFromUserEntity(DatastoreService datastore,
-      Entity userEntity, Key listingKey, String property) {
-    // Get the string of listing keys from userEntity's specified property
-    // This should most likely be createdListingKeys, upvotedListingKeys,
-    //    or downvotedListingKeys
-    String listingKeysString = getListingKeysAsString(userEntity, property);
-    
-    // Remove a specified key from listingKeysString and update userEntity
-    listingKeysString = listingKeysString.replaceFirst(
-        KeyFactory.keyToString(listingKey) + " ", "");
-    userEntity.setProperty(property, listingKeysString);
-    datastore.put(userEntity);
-  }
-
-  /**
-   * Get an array of listing key strings from a property in a user entity.
-   *
-   * @param userEntity an entity associated with a specific user
-   * @param property string of the property to get listing key strings from
-   * @return String[] of listing key strings
-   */
-  public static String[] getListingKeysAsArray(Entity userEntity, String property,
-      String delimiter) {
-    String listingKeysString = (String) userEntity.getProperty(property);
-    return listingKeysString.trim().split(delimiter);
-  }
-
-  /**
-   * Get the string of listing key strings from a property in a user entity.
-   *
-   * @param userEntity an entity associated with a specific user
-   * @param property string of the property to get listing key strings from
-   * @return String of listing keys
-   */
-  public static String getListingKeysAsString(Entity userEntity, String property) {
-    return (String) userEntity.getProperty(property);
-  }
-
-  /**
-   * Adds a string of a key representing the current user entity into a
-   * specified property of a listing and updates the listing entity.
-   *
-   * @param datastore a datastore service instance
-   * @param userService a user service instance
-   * @param listingKey the key of a listing in the datastore
-   * @param property the property to add the current user's key to
-   */
-  public static void addCurrentUserKeyToListingEntity(DatastoreService datastore,
-      UserService userService, Key listingKey, String property) throws Exception {
-
-    Entity listingEntity = datastore.get(listingKey);
-    String upvotedUsersString = (String) listingEntity.getProperty(property);
-
-    Entity currentUserEntity =
-        AuthenticationUtility.getCurrentUserEntity(datastore, userService);
-    String currentUserKeyString = KeyFactory.keyToString(currentUserEntity.getKey());
-
-    if (!upvotedUsersString.contains(currentUserKeyString)) {
-      upvotedUsersString += currentUserKeyString + " ";
-      listingEntity.setProperty(property, upvotedUsersString);
-      datastore.put(listingEntity);
-    }
-  }
-
-  /**
-   * Removes a string of a key representing the current user entity from a
-   * specified property of a listing and updates the listing entity.
-   *
-   * @param datastore a datastore service instance
-   * @param userService a user service instance
-   * @param listingKey the key of a listing in the datastore
-   * @param property the property to remove the current user's key from
-   */
-  public static void removeCurrentUserKeyFromListingEntity(DatastoreService datastore,
-      UserService userService, Key listingKey, String property) throws Exception {
-
-    Entity listingEntity = datastore.get(listingKey);
-    String upvotedUsersString = (String) listingEntity.getProperty(property);
-
-    Entity currentUserEntity =
-        AuthenticationUtility.getCurrentUserEntity(datastore, userService);
-    String currentUserKeyString = KeyFactory.keyToString(currentUserEntity.getKey());
-
-    if (upvotedUsersString.contains(currentUserKeyString)) {
-      upvotedUsersString = upvotedUsersString.replaceFirst(currentUserKeyString + " ", "");
-      listingEntity.setProperty(property, upvotedUsersString);
-      datastore.put(listingEntity);
-    }
-  }
 }
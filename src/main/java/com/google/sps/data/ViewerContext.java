@@ -0,0 +1,191 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.users.UserService;
+import com.google.sps.utility.AuthenticationUtility;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The user that is viewing listings during a request.
+ * Created once per request so that turning Entities into Listings does not
+ *     need to look up the user again. The user's votes on listings are 
+ *     looked up by key (see Vote) in one batch with loadVotes or applyVotes 
+ *     and kept for the rest of the request. A vote that was not looked up 
+ *     is "neutral", so that creating Listings never gets votes one at a time.
+ */
+public final class ViewerContext {
+
+  private final DatastoreService datastore;
+  private final String email;
+  private final Entity userEntity;
+  // The vote of this user on each listing that was looked up, by listing key 
+  //     String
+  private final Map<String, String> votes = new HashMap<String, String>();
+
+  public ViewerContext(DatastoreService datastore, String email, 
+      Entity userEntity) {
+    this.datastore = datastore;
+    this.email = email;
+    this.userEntity = userEntity;
+  }
+
+  /**
+   * Creates a ViewerContext for the current user. If the user is not logged
+   *     in, the ViewerContext has no email, user Entity, or votes.
+   *
+   * @param datastore the DatastoreService that connects to the back end.
+   * @param userService used to get the user's email and to determine if the
+   *     user is logged in.
+   * @return the ViewerContext of the current user.
+   */
+  public static ViewerContext createViewerContext(DatastoreService datastore,
+      UserService userService) {
+    if (userService.isUserLoggedIn()) {
+      String userEmail = userService.getCurrentUser().getEmail();
+      Entity userEntity = AuthenticationUtility.getUserByEmail(datastore,
+          userEmail);
+
+      return new ViewerContext(datastore, userEmail, userEntity);
+    }
+
+    return new ViewerContext(datastore, "", null);
+  }
+
+  /**
+   * Creates a ViewerContext from an Entity that represents a user.
+   *
+   * @param datastore the DatastoreService that connects to the back end.
+   * @param userEntity the entity that represents the user viewing listings.
+   * @return the ViewerContext of the user.
+   */
+  public static ViewerContext createViewerContext(DatastoreService datastore,
+      Entity userEntity) {
+    String userEmail = (String) userEntity.getProperty("email");
+
+    return new ViewerContext(datastore, userEmail, userEntity);
+  }
+
+  /**
+   * Looks up this user's votes on listings in one batch. Must be called 
+   *     before Listings are created from the listing Entities, unless the 
+   *     votes are set afterwards with applyVotes.
+   *
+   * @param listingKeys the keys of the listing Entities.
+   */
+  public void loadVotes(Collection<Key> listingKeys) {
+    if (userEntity == null) {
+      return;
+    }
+
+    List<Key> missingListingKeys = new ArrayList<Key>();
+    for (Key listingKey : listingKeys) {
+      if (!votes.containsKey(KeyFactory.keyToString(listingKey))) {
+        missingListingKeys.add(listingKey);
+      }
+    }
+    if (missingListingKeys.isEmpty()) {
+      return;
+    }
+
+    for (Map.Entry<Key, String> vote : Vote.getVotes(datastore, 
+        userEntity.getKey(), missingListingKeys).entrySet()) {
+      votes.put(KeyFactory.keyToString(vote.getKey()), vote.getValue());
+    }
+  }
+
+  /**
+   * Sets the vote of this user on each Listing, looking up the votes that 
+   *     were not looked up yet in one batch.
+   *
+   * @param listings the Listings to set the votes of.
+   */
+  public void applyVotes(List<Listing> listings) {
+    List<Key> listingKeys = new ArrayList<Key>();
+    for (Listing listing : listings) {
+      listingKeys.add(KeyFactory.stringToKey(listing.getKeyString()));
+    }
+    loadVotes(listingKeys);
+
+    for (Listing listing : listings) {
+      listing.setVote(getVoteForListing(listing.getKeyString()));
+    }
+  }
+
+  /**
+   * Get a string representing the vote this user has on a listing.
+   *
+   * @param listingKeyString a string of a listing entity's key
+   * @return a string representing the vote this user has on a listing,
+   *     can be upvote, downvote, or neutral, which is also returned if the 
+   *     vote was not looked up with loadVotes or applyVotes
+   */
+  public String getVoteForListing(String listingKeyString) {
+    String vote = votes.get(listingKeyString);
+    if (vote == null) {
+      return "neutral";
+    }
+
+    return vote;
+  }
+
+  /**
+   * Returns true if this user owns the listing.
+   *
+   * @param listingEntity the entity that represents a listing
+   * @return a boolean that states whether this user owns the listing or not.
+   */
+  public boolean ownsListing(Entity listingEntity) {
+    String ownersEmail = (String) listingEntity.getProperty("ownersEmail");
+
+    return isLoggedIn() && email.equals(ownersEmail);
+  }
+
+  /**
+   * Returns true if the user viewing listings is logged in.
+   *
+   * @return a boolean that states whether this user is logged in.
+   */
+  public boolean isLoggedIn() {
+    return email.length() > 0;
+  }
+
+  /**
+   * Returns the email of this user.
+   *
+   * @return the email of this user or "" if the user is not logged in.
+   */
+  public String getEmail() {
+    return email;
+  }
+
+  /**
+   * Returns the Entity that represents this user.
+   *
+   * @return the user Entity or null if the user is not logged in or does not
+   *     have an account.
+   */
+  public Entity getUserEntity() {
+    return userEntity;
+  }
+}
@@ -0,0 +1,207 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.google.sps.data;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.CompositeFilterOperator;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.google.appengine.api.datastore.Query.SortDirection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A user's upvote or downvote on a listing. Each vote is its own Entity, a 
+ *     child of the user named after the listing's key String, so that a 
+ *     user's vote on a listing is a get by key and changing it only writes 
+ *     that Entity. A neutral vote has no Entity.
+ */
+public final class Vote {
+
+  public static final String KIND = "Vote";
+
+  // The most keys Datastore deletes in one batch
+  private static final int MAX_DELETE_BATCH_SIZE = 500;
+
+  /**
+   * Returns the key of a user's vote on a listing.
+   *
+   * @param userKey the key of the user Entity.
+   * @param listingKey the key of the listing Entity.
+   * @return the key of the vote Entity.
+   */
+  public static Key createKey(Key userKey, Key listingKey) {
+    return KeyFactory.createKey(userKey, KIND, 
+        KeyFactory.keyToString(listingKey));
+  }
+
+  /**
+   * Creates the Entity of a user's vote on a listing.
+   *
+   * @param userKey the key of the user Entity that voted.
+   * @param listingKey the key of the listing Entity that was voted on.
+   * @param vote the vote, which is "upvote" or "downvote".
+   * @return the vote Entity.
+   */
+  public static Entity createVoteEntity(Key userKey, Key listingKey, 
+      String vote) {
+    Entity voteEntity = new Entity(createKey(userKey, listingKey));
+    voteEntity.setProperty("listing", listingKey);
+    voteEntity.setProperty("vote", vote);
+    voteEntity.setProperty("timestamp", System.currentTimeMillis());
+
+    return voteEntity;
+  }
+
+  /**
+   * Returns the vote stored in a vote Entity.
+   *
+   * @param voteEntity the vote Entity, or null if there is none.
+   * @return "upvote", "downvote", or "neutral" if voteEntity is null.
+   */
+  public static String getVote(Entity voteEntity) {
+    if (voteEntity == null) {
+      return "neutral";
+    }
+
+    return (String) voteEntity.getProperty("vote");
+  }
+
+  /**
+   * Gets a user's votes on listings in one batch.
+   *
+   * @param datastore the DatastoreService that connects to the back end.
+   * @param userKey the key of the user Entity.
+   * @param listingKeys the keys of the listing Entities.
+   * @return the user's vote on each listing by listing key, which is 
+   *     "upvote", "downvote", or "neutral".
+   */
+  public static Map<Key, String> getVotes(DatastoreService datastore, 
+      Key userKey, Collection<Key> listingKeys) {
+    List<Key> voteKeys = new ArrayList<Key>();
+    for (Key listingKey : listingKeys) {
+      voteKeys.add(createKey(userKey, listingKey));
+    }
+    Map<Key, Entity> voteEntities = datastore.get(voteKeys);
+
+    Map<Key, String> votes = new HashMap<Key, String>();
+    for (Key listingKey : listingKeys) {
+      votes.put(listingKey, 
+          getVote(voteEntities.get(createKey(userKey, listingKey))));
+    }
+
+    return votes;
+  }
+
+  /**
+   * Returns the keys of the listings a user upvoted, the most recently 
+   *     upvoted listings first.
+   *
+   * @param datastore the DatastoreService that connects to the back end.
+   * @param userKey the key of the user Entity.
+   * @return the keys of the upvoted listing Entities.
+   */
+  public static List<Key> getUpvotedListingKeys(DatastoreService datastore, 
+      Key userKey) {
+    Query query = new Query(KIND, userKey)
+        .setFilter(new FilterPredicate("vote", FilterOperator.EQUAL, "upvote"))
+        .addSort("timestamp", SortDirection.DESCENDING);
+
+    List<Key> listingKeys = new ArrayList<Key>();
+    for (Entity voteEntity : datastore.prepare(query).asIterable()) {
+      listingKeys.add((Key) voteEntity.getProperty("listing"));
+    }
+
+    return listingKeys;
+  }
+
+  /**
+   * Returns the keys of the users that upvoted a listing. The query is 
+   *     eventually consistent, so the newest upvotes can be missing.
+   *
+   * @param datastore the DatastoreService that connects to the back end.
+   * @param listingKey the key of the listing Entity.
+   * @return the keys of the user Entities.
+   */
+  public static List<Key> getUpvotedUserKeys(DatastoreService datastore, 
+      Key listingKey) {
+    Query query = new Query(KIND)
+        .setFilter(CompositeFilterOperator.and(
+            new FilterPredicate("listing", FilterOperator.EQUAL, listingKey),
+            new FilterPredicate("vote", FilterOperator.EQUAL, "upvote")))
+        .setKeysOnly();
+
+    List<Key> userKeys = new ArrayList<Key>();
+    for (Entity voteEntity : datastore.prepare(query).asIterable()) {
+      userKeys.add(voteEntity.getKey().getParent());
+    }
+
+    return userKeys;
+  }
+
+  /**
+   * Deletes all of the votes on a listing.
+   *
+   * @param datastore the DatastoreService that connects to the back end.
+   * @param listingKey the key of the listing Entity.
+   */
+  public static void deleteVotesOnListing(DatastoreService datastore, 
+      Key listingKey) {
+    deleteVotes(datastore, new Query(KIND).setFilter(
+        new FilterPredicate("listing", FilterOperator.EQUAL, listingKey)));
+  }
+
+  /**
+   * Deletes all of a user's votes.
+   *
+   * @param datastore the DatastoreService that connects to the back end.
+   * @param userKey the key of the user Entity.
+   */
+  public static void deleteVotesOfUser(DatastoreService datastore, 
+      Key userKey) {
+    deleteVotes(datastore, new Query(KIND, userKey));
+  }
+
+  /**
+   * Deletes the votes returned by a query, at most MAX_DELETE_BATCH_SIZE at 
+   *     a time, as Datastore rejects larger batches.
+   *
+   * @param datastore the DatastoreService that connects to the back end.
+   * @param query the query that returns the vote Entities to delete.
+   */
+  private static void deleteVotes(DatastoreService datastore, Query query) {
+    List<Key> voteKeys = new ArrayList<Key>();
+    for (Entity voteEntity : 
+        datastore.prepare(query.setKeysOnly()).asIterable()) {
+      voteKeys.add(voteEntity.getKey());
+      if (voteKeys.size() == MAX_DELETE_BATCH_SIZE) {
+        datastore.delete(voteKeys);
+        voteKeys = new ArrayList<Key>();
+      }
+    }
+
+    if (!voteKeys.isEmpty()) {
+      datastore.delete(voteKeys);
+    }
+  }
+}
@@ -21,8 +21,10 @@ import com.google.appengine.api.datastore.Query.Filter;
 import com.google.appengine.api.datastore.Query.FilterOperator;
 import com.google.appengine.api.datastore.Query.FilterPredicate;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 
 public final class FilterQuery {
   /**
@@ -37,28 +39,69 @@ public final class FilterQuery {
    */
   public static void filterQuery(String filtersKeyString, 
       HashMap<String, String> filters, String property, Query query) {
-    // If no filters are checked (String length = FILTER_MIN) or all of the 
-    //     filters have been checked (FILTER_MAX) then don't add any filters.
-    String[] typeFilters = filtersKeyString.split("@");
-    boolean someTypeFiltersChecked = filtersKeyString.length() > 0 && 
-        typeFilters.length < filters.size();
-    if (someTypeFiltersChecked) {
+    List<String> filterValues = getFilterValues(filtersKeyString, filters);
+    if (filterValues.size() > 0) {
       // If there are more than one filters use a CompositeFilter
       Filter filter;
-      if (typeFilters.length > 1) {
+      if (filterValues.size() > 1) {
         Collection<Filter> filterPredicates = new ArrayList<Filter>();
-        for (String typeFilter : typeFilters) {
+        for (String filterValue : filterValues) {
           filterPredicates.add(new FilterPredicate(property, 
-              FilterOperator.EQUAL, filters.get(typeFilter)));
+              FilterOperator.EQUAL, filterValue));
         }
 
         filter = new CompositeFilter(CompositeFilterOperator.OR,filterPredicates);
       // If there are only one filter use a FilterPredicate
       } else {
         filter = new FilterPredicate(property, 
-            FilterOperator.EQUAL, filters.get(typeFilters[0]));
+            FilterOperator.EQUAL, filterValues.get(0));
       }
-      query = query.setFilter(filter);
+      addFilter(query, filter);
     } 
   }  
+
+  /**
+   * Gets the values of the checked filters if some filters have been checked 
+   *     as opposed to no filters checked or all filters checked.
+   * 
+   * @param filtersKeyString The string that contains filter keys separated by 
+   *     an "@".
+   * @param filters A Hashmap used to get the filter value from the filter keys.
+   * @return the values of the checked filters, or an empty List if no filters 
+   *     or all of the filters are checked.
+   */
+  public static List<String> getFilterValues(String filtersKeyString, 
+      HashMap<String, String> filters) {
+    List<String> filterValues = new ArrayList<String>();
+
+    // If no filters are checked (String length = FILTER_MIN) or all of the 
+    //     filters have been checked (FILTER_MAX) then there are no filters.
+    String[] typeFilters = filtersKeyString.split("@");
+    boolean someTypeFiltersChecked = filtersKeyString.length() > 0 && 
+        typeFilters.length < filters.size();
+    if (someTypeFiltersChecked) {
+      for (String typeFilter : typeFilters) {
+        filterValues.add(filters.get(typeFilter));
+      }
+    }
+
+    return filterValues;
+  }
+
+  /**
+   * Adds a filter to a query. If the query already has a filter, the query 
+   *     will only match Entities that pass both filters.
+   *
+   * @param query The query to add a filter to
+   * @param filter The filter to add
+   */
+  public static void addFilter(Query query, Filter filter) {
+    Filter currentFilter = query.getFilter();
+    if (currentFilter == null) {
+      query.setFilter(filter);
+    } else {
+      query.setFilter(new CompositeFilter(CompositeFilterOperator.AND, 
+          Arrays.asList(currentFilter, filter)));
+    }
+  }
 }
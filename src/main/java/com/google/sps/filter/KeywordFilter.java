@@ -15,51 +15,96 @@
 package com.google.sps.filter;
 
 import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.google.sps.utility.ListingConstants;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collection;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.TreeSet;
 
 public final class KeywordFilter {
+
+  // The indexed property of a listing Entity that stores the words in its 
+  //     tags and name.
+  public static final String KEYWORDS_PROPERTY = "keywords";
+
   /**
-   * Filter a list of entites to include only listings whose tags or name
-   * match keywords specified in the search bar.
+   * Returns the lowercase words in the given Strings. Words are separated by 
+   *     any non-word character.
    *
-   * @param listingEntities a list of listing entities to filter through
-   * @param keywordFiltersString a string of keywords to compare to listings
-   * @return a list of entities that has been filtered by keyword
+   * @param strings the Strings to split into words.
+   * @return a sorted set of lowercase words.
    */
-  public static List<Entity> filterByKeyword(List<Entity> listingEntities,
-      String keywordFiltersString) {
+  public static TreeSet<String> getKeywords(String... strings) {
+    TreeSet<String> keywords = new TreeSet<String>();
+    for (String string : strings) {
+      if (string == null) {
+        continue;
+      }
 
-    List<Entity> updatedListingEntities = new ArrayList<Entity>();
-    
-    // Make a set of the keywords entered into the search bar
-    HashSet<String> keywordFiltersSet = new HashSet<String>(
-        Arrays.asList(keywordFiltersString.toLowerCase().split("\\W+")));
+      for (String keyword : string.toLowerCase().split("\\W+")) {
+        if (keyword.length() > 0) {
+          keywords.add(keyword);
+        }
+      }
+    }
 
-    // For each of the remaining entities, check if any tags or words in the
-    //    listing name match with the keywords
-    for (int i = 0; i < listingEntities.size(); i++) {
-      Entity currentEntity = listingEntities.get(i);
-      // Make a set of tags and words in the name
-      String listingTags = (String) currentEntity.getProperty("tags");
-      String listingName = (String) currentEntity.getProperty("name");
+    return keywords;
+  }
 
-      HashSet<String> matches = new HashSet<>(
-          Arrays.asList(listingTags.toLowerCase().split("\\W+")));
-      matches.addAll(Arrays.asList(listingName.toLowerCase().split("\\W+")));
+  /**
+   * Stores the words in a listing Entity's tags and name in its keywords 
+   *     property so that keyword searches can be answered by the Datastore 
+   *     index instead of by scanning listings.
+   * Must be called whenever a listing Entity's tags or name change.
+   *
+   * @param listingEntity the listing Entity to index.
+   */
+  public static void indexKeywords(Entity listingEntity) {
+    String listingTags = (String) listingEntity.getProperty("tags");
+    String listingName = (String) listingEntity.getProperty("name");
 
-      // Get the intersection of the name/tags and the entered keywords
-      matches.retainAll(keywordFiltersSet);
+    listingEntity.setProperty(KEYWORDS_PROPERTY, 
+        new ArrayList<String>(getKeywords(listingTags, listingName)));
+  }
 
-      // If the intersection is not the null set, include the current entity
-      if (matches.size() > 0) {
-        updatedListingEntities.add(currentEntity);
+  /**
+   * Returns the keywords specified in the search bar that listings are 
+   *     queried by, in the order they were typed.
+   * Only the first MAX_KEYWORDS keywords are used, since each keyword is 
+   *     queried on its own.
+   *
+   * @param keywordFiltersString a string of keywords to compare to listings.
+   * @return the lowercase keywords without repeats, first typed first.
+   */
+  public static List<String> getQueryKeywords(String keywordFiltersString) {
+    LinkedHashSet<String> keywords = new LinkedHashSet<String>();
+    if (keywordFiltersString != null) {
+      for (String keyword : 
+          keywordFiltersString.toLowerCase().split("\\W+")) {
+        if (keyword.length() > 0 
+            && keywords.size() < ListingConstants.MAX_KEYWORDS) {
+          keywords.add(keyword);
+        }
       }
     }
 
-    return updatedListingEntities;
-  }  
+    return new ArrayList<String>(keywords);
+  }
+
+  /**
+   * Filter a query to include only listings whose tags or name match a 
+   *     keyword. A query of each keyword is run instead of one query that 
+   *     combines them with IN, so that each query can be paged with cursors 
+   *     (see FetchListingsUtility, which merges them).
+   *
+   * @param keyword a keyword returned by getQueryKeywords.
+   * @param query The query to add a filter to
+   */
+  public static void filterQuery(String keyword, Query query) {
+    FilterQuery.addFilter(query, new FilterPredicate(KEYWORDS_PROPERTY, 
+        FilterOperator.EQUAL, keyword));
+  }
 }
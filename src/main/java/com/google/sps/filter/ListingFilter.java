@@ -0,0 +1,33 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.filter;
+
+import com.google.sps.data.Listing;
+import java.util.List;
+
+/** 
+ * Filters Listings in batches as they are fetched, so that a page of 
+ *     Listings can be filled from listings further down a query.
+ */
+public interface ListingFilter {
+  /**
+   * Returns the Listings that pass this filter, in the same order they were 
+   *     given.
+   *
+   * @param listings a batch of Listings to filter.
+   * @return the Listings that pass this filter.
+   */
+  List<Listing> filter(List<Listing> listings) throws Exception;
+}
@@ -0,0 +1,57 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.filter;
+
+import com.google.sps.data.Listing;
+import com.google.sps.utility.GeoUtility;
+import com.google.sps.utility.ListingDistances;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Filters out Listings that are further from the user than a radius. */
+public final class RadiusFilter implements ListingFilter {
+
+  private final ListingDistances distances;
+  private final double radiusInMeters;
+
+  public RadiusFilter(ListingDistances distances, int radius) {
+    this.distances = distances;
+    this.radiusInMeters = GeoUtility.radiusInMeters(radius);
+  }
+
+  /**
+   * Returns the Listings that are within the radius of the user's location.
+   *
+   * @param listings a batch of Listings to filter.
+   * @return the Listings that are within the radius.
+   */
+  @Override
+  public List<Listing> filter(List<Listing> listings) throws Exception {
+    // Every listing is within a radius of anywhere
+    if (radiusInMeters == Double.POSITIVE_INFINITY) {
+      return listings;
+    }
+
+    double[] distanceValues = distances.getDistancesInMeters(listings);
+    List<Listing> listingsInRadius = new ArrayList<Listing>();
+    for (int i = 0; i < listings.size(); i++) {
+      if (distanceValues[i] <= radiusInMeters) {
+        listingsInRadius.add(listings.get(i));
+      }
+    }
+
+    return listingsInRadius;
+  }
+}
@@ -0,0 +1,189 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.search;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.sps.data.GeocodeOBJ;
+import com.google.sps.data.Listing;
+import com.google.sps.data.ViewerContext;
+import com.google.sps.filter.KeywordFilter;
+import com.google.sps.utility.GeoUtility;
+import com.google.sps.utility.Geocoder;
+import com.google.sps.utility.KdTree;
+import com.google.sps.utility.ListingConstants;
+import com.google.sps.utility.ListingSpatialIndex;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * The first stage of a search that shows the nearest listings first. Finds 
+ *     the listings nearest to the user in the ListingSpatialIndex, then gets 
+ *     only those listing Entities from Datastore until a page is full.
+ * Listings whose location could not be found are not shown.
+ */
+public final class NearestStage implements SearchStage {
+
+  private final DatastoreService datastore;
+  private final ViewerContext viewer;
+  private final GeocodeOBJ origin;
+  private final double radiusInMeters;
+  private final List<String> types;
+  private final TreeSet<String> keywords;
+  private final String cursorString;
+  private final int pageSize;
+  private String nextCursorString = "";
+
+  public NearestStage(DatastoreService datastore, ViewerContext viewer, 
+      GeocodeOBJ origin, double radiusInMeters, List<String> types, 
+      String keywordFiltersString, String cursorString, int pageSize) {
+    this.datastore = datastore;
+    this.viewer = viewer;
+    this.origin = origin;
+    this.radiusInMeters = radiusInMeters;
+    this.types = types;
+    this.keywords = KeywordFilter.getKeywords(keywordFiltersString);
+    this.cursorString = cursorString;
+    this.pageSize = pageSize;
+  }
+
+  @Override
+  public String getName() {
+    return "nearest";
+  }
+
+  /**
+   * Returns a page of the nearest Listings of the types that match the 
+   *     keywords.
+   *
+   * @param listings ignored, as this is the first stage.
+   * @return a page of Listings, nearest first.
+   */
+  @Override
+  public List<Listing> run(List<Listing> listings) throws Exception {
+    String cursor = cursorString;
+    int scannedCount = 0;
+    // The viewer's votes are looked up in one batch once the page is full
+    while (listings.size() < pageSize 
+        && scannedCount < ListingConstants.SCAN_LIMIT) {
+      // Without keywords every listing in the index is shown, so only as many 
+      //     as the page needs are fetched
+      int batchSize = pageSize;
+      if (keywords.isEmpty()) {
+        batchSize = pageSize - listings.size();
+      }
+      batchSize = Math.min(batchSize, 
+          ListingConstants.SCAN_LIMIT - scannedCount);
+
+      List<KdTree.Neighbor<String>> neighbors = ListingSpatialIndex.nearest(
+          datastore, origin.getLatitude(), origin.getLongitude(), batchSize, 
+          radiusInMeters, cursor, types);
+      List<Key> keys = new ArrayList<Key>();
+      for (KdTree.Neighbor<String> neighbor : neighbors) {
+        keys.add(KeyFactory.stringToKey(neighbor.getKey()));
+      }
+      Map<Key, Entity> listingEntities = datastore.get(keys);
+
+      for (int i = 0; i < neighbors.size() && listings.size() < pageSize; 
+          i++) {
+        cursor = neighbors.get(i).toCursorString();
+        scannedCount++;
+
+        // The listing may have been deleted, moved, or changed by another 
+        //     instance since it was indexed
+        Entity listingEntity = listingEntities.get(keys.get(i));
+        if (listingEntity != null && matchesSearch(listingEntity) 
+            && matchesKeywords(listingEntity)) {
+          listings.add(Listing.createListing(listingEntity, viewer));
+        }
+      }
+
+      if (neighbors.size() < batchSize && listings.size() < pageSize) {
+        // There are no more listings in the radius
+        nextCursorString = "";
+        viewer.applyVotes(listings);
+        return listings;
+      }
+    }
+
+    nextCursorString = cursor;
+    viewer.applyVotes(listings);
+    return listings;
+  }
+
+  /**
+   * Returns the cursor String of the page after the one returned by run.
+   *
+   * @return the cursor String or "" if there are no more listings.
+   */
+  public String getNextCursorString() {
+    return nextCursorString;
+  }
+
+  /**
+   * Returns true if a listing is of one of the types and within the radius 
+   *     of the user, like the index said it was when it was found.
+   *
+   * @param listingEntity the entity that represents a listing.
+   * @return a boolean that states whether the listing matches the search.
+   */
+  private boolean matchesSearch(Entity listingEntity) {
+    Object type = listingEntity.getProperty("type");
+    if (!types.isEmpty() && !types.contains(type)) {
+      return false;
+    }
+
+    Object latitude = listingEntity.getProperty(Geocoder.LATITUDE_PROPERTY);
+    Object longitude = listingEntity.getProperty(Geocoder.LONGITUDE_PROPERTY);
+    if (!(latitude instanceof Number && longitude instanceof Number)) {
+      return false;
+    }
+
+    return GeoUtility.distanceInMeters(origin.getLatitude(), 
+        origin.getLongitude(), ((Number) latitude).doubleValue(), 
+        ((Number) longitude).doubleValue()) <= radiusInMeters;
+  }
+
+  /**
+   * Returns true if a listing is indexed under any of the keywords, like the 
+   *     keyword filter of a listing query.
+   *
+   * @param listingEntity the entity that represents a listing.
+   * @return a boolean that states whether the listing matches the keywords.
+   */
+  private boolean matchesKeywords(Entity listingEntity) {
+    if (keywords.isEmpty()) {
+      return true;
+    }
+
+    Object listingKeywords = listingEntity.getProperty(
+        KeywordFilter.KEYWORDS_PROPERTY);
+    if (!(listingKeywords instanceof Collection)) {
+      return false;
+    }
+    for (Object listingKeyword : (Collection<?>) listingKeywords) {
+      if (keywords.contains(listingKeyword)) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+}
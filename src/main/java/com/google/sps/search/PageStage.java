@@ -0,0 +1,99 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.search;
+
+import com.google.sps.data.Listing;
+import com.google.sps.data.ViewerContext;
+import com.google.sps.filter.ListingFilter;
+import com.google.sps.utility.FetchListingsUtility;
+import com.google.sps.utility.ListingStream;
+import java.util.List;
+
+/**
+ * The first stage of a search. Streams listing Entities from Datastore, turns 
+ *     them into Listings, and passes them through the filters until a page 
+ *     is full.
+ * The time spent waiting for Datastore and turning Entities into Listings is 
+ *     recorded under "source" and "materialize". Each filter records its own 
+ *     time under its name.
+ */
+public final class PageStage implements SearchStage {
+
+  private final List<ListingStream> streams;
+  private final int pageSize;
+  private final ViewerContext viewer;
+  private final List<ListingFilter> filters;
+  private final SearchPipeline pipeline;
+  private String nextCursorString = "";
+
+  public PageStage(List<ListingStream> streams, int pageSize, 
+      ViewerContext viewer, SearchPipeline pipeline) {
+    this.streams = streams;
+    this.pageSize = pageSize;
+    this.viewer = viewer;
+    this.filters = pipeline.getFilters();
+    this.pipeline = pipeline;
+  }
+
+  @Override
+  public String getName() {
+    return "page";
+  }
+
+  /**
+   * Returns a page of Listings that passed the filters.
+   *
+   * @param listings ignored, as this is the first stage.
+   * @return a page of Listings.
+   */
+  @Override
+  public List<Listing> run(List<Listing> listings) throws Exception {
+    // Listings are created for Entities that the filters drop, so the 
+    //     viewer's votes are only looked up for the Listings on the page
+    nextCursorString = FetchListingsUtility.fetchPage(streams, pageSize, 
+        viewer, filters, listings);
+    viewer.applyVotes(listings);
+    recordStreamStats();
+
+    return listings;
+  }
+
+  /**
+   * Returns the cursor String of the page after the one returned by run.
+   *
+   * @return the cursor String or "" if there are no more listings.
+   */
+  public String getNextCursorString() {
+    return nextCursorString;
+  }
+
+  /** Records the fetch and materialize time of the streams in the pipeline. */
+  private void recordStreamStats() {
+    long fetchNanos = 0;
+    int fetchCount = 0;
+    long materializeNanos = 0;
+    int materializeCount = 0;
+    for (ListingStream stream : streams) {
+      fetchNanos += stream.getFetchNanos();
+      fetchCount += stream.getFetchCount();
+      materializeNanos += stream.getMaterializeNanos();
+      materializeCount += stream.getMaterializeCount();
+    }
+
+    pipeline.recordNanos("source", fetchNanos, 0, fetchCount);
+    pipeline.recordNanos("materialize", materializeNanos, fetchCount, 
+        materializeCount);
+  }
+}
@@ -0,0 +1,62 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.search;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.sps.data.Listing;
+import com.google.sps.data.ViewerContext;
+import com.google.sps.sort.recommended.RecommendedSort;
+import com.google.sps.utility.ListingDistances;
+import java.util.List;
+
+/** The stage of a search that sorts Listings based on the sort parameter. */
+public final class RankStage implements SearchStage {
+
+  private final int sortBy;
+  private final DatastoreService datastore;
+  private final ViewerContext viewer;
+  private final ListingDistances distances;
+
+  public RankStage(int sortBy, DatastoreService datastore, 
+      ViewerContext viewer, ListingDistances distances) {
+    this.sortBy = sortBy;
+    this.datastore = datastore;
+    this.viewer = viewer;
+    this.distances = distances;
+  }
+
+  @Override
+  public String getName() {
+    return "rank";
+  }
+
+  /**
+   * Sorts the Listings based on the sort parameter.
+   *
+   * @param listings the Listings to sort.
+   * @return the sorted Listings.
+   */
+  @Override
+  public List<Listing> run(List<Listing> listings) throws Exception {
+    if (sortBy == 1) {
+      return RecommendedSort.sortByRecommended(datastore, listings, viewer, 
+          distances);
+    }
+
+    // Sorting by reputation is done by the query that fetched the listings, 
+    //     and the other sorts keep the order of the query
+    return listings;
+  }
+}
@@ -0,0 +1,157 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.search;
+
+import com.google.sps.data.Listing;
+import com.google.sps.filter.ListingFilter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Runs the stages of a search one after the other and records how long each 
+ *     stage took and how many Listings went in and out of it.
+ * Filters are not stages of their own: they are run by the stage that 
+ *     fetches listings, on every batch, in the order they were added.
+ */
+public final class SearchPipeline {
+
+  private static final Logger logger = 
+      Logger.getLogger(SearchPipeline.class.getName());
+
+  private final String name;
+  private final List<SearchStage> stages = new ArrayList<SearchStage>();
+  private final List<TimedListingFilter> filters = 
+      new ArrayList<TimedListingFilter>();
+  private final LinkedHashMap<String, StageStats> stats = 
+      new LinkedHashMap<String, StageStats>();
+
+  public SearchPipeline(String name) {
+    this.name = name;
+  }
+
+  /**
+   * Adds a stage that runs after the stages that were already added.
+   *
+   * @param stage the stage to add.
+   */
+  public void addStage(SearchStage stage) {
+    stages.add(stage);
+  }
+
+  /**
+   * Adds a filter that the Listings have to pass before they are ranked.
+   *
+   * @param filterName the name the StageStats of the filter are recorded 
+   *     under.
+   * @param filter the filter to add.
+   */
+  public void addFilter(String filterName, ListingFilter filter) {
+    filters.add(new TimedListingFilter(filter, getStats(filterName)));
+  }
+
+  /**
+   * Returns the filters of this search in the order they were added.
+   *
+   * @return the filters of this search.
+   */
+  public List<ListingFilter> getFilters() {
+    return new ArrayList<ListingFilter>(filters);
+  }
+
+  /**
+   * Runs every stage, passing the Listings returned by each stage to the next 
+   *     one.
+   *
+   * @return the Listings returned by the last stage.
+   */
+  public List<Listing> run() throws Exception {
+    List<Listing> listings = new ArrayList<Listing>();
+    for (SearchStage stage : stages) {
+      long startNanos = System.nanoTime();
+      int inputCount = listings.size();
+      listings = stage.run(listings);
+      record(stage.getName(), startNanos, inputCount, listings.size());
+    }
+
+    return listings;
+  }
+
+  /**
+   * Records a run of a stage that is not run by this pipeline, like writing 
+   *     the response.
+   *
+   * @param stageName the name of the stage.
+   * @param startNanos the System.nanoTime() when the stage started.
+   * @param inputCount the number of Listings that went into the stage.
+   * @param outputCount the number of Listings that came out of the stage.
+   */
+  public void record(String stageName, long startNanos, int inputCount, 
+      int outputCount) {
+    getStats(stageName).record(System.nanoTime() - startNanos, inputCount, 
+        outputCount);
+  }
+
+  /**
+   * Records the part of a stage that is timed by the stage itself, like the 
+   *     time the page stage spends waiting for Datastore.
+   *
+   * @param stageName the name of the part of the stage.
+   * @param nanos how long the part took in nanoseconds.
+   * @param inputCount the number of items that went into the part.
+   * @param outputCount the number of items that came out of the part.
+   */
+  public void recordNanos(String stageName, long nanos, int inputCount, 
+      int outputCount) {
+    getStats(stageName).record(nanos, inputCount, outputCount);
+  }
+
+  /**
+   * Returns the StageStats of every stage and filter in the order they were 
+   *     added.
+   *
+   * @return the StageStats of this search.
+   */
+  public List<StageStats> getStats() {
+    return new ArrayList<StageStats>(stats.values());
+  }
+
+  /** Logs the StageStats of this search. */
+  public void logStats() {
+    StringBuilder message = new StringBuilder(name);
+    for (StageStats stageStats : stats.values()) {
+      message.append("\n  ").append(stageStats);
+    }
+    logger.info(message.toString());
+  }
+
+  /**
+   * Returns the StageStats of a stage, creating them if the stage has not 
+   *     run yet.
+   *
+   * @param stageName the name of the stage.
+   * @return the StageStats of the stage.
+   */
+  private StageStats getStats(String stageName) {
+    StageStats stageStats = stats.get(stageName);
+    if (stageStats == null) {
+      stageStats = new StageStats(stageName);
+      stats.put(stageName, stageStats);
+    }
+
+    return stageStats;
+  }
+}
@@ -0,0 +1,38 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.search;
+
+import com.google.sps.data.Listing;
+import java.util.List;
+
+/** A stage of a SearchPipeline that turns Listings into other Listings. */
+public interface SearchStage {
+
+  /**
+   * Returns the name of this stage that its StageStats are recorded under.
+   *
+   * @return the name of this stage.
+   */
+  String getName();
+
+  /**
+   * Runs this stage on the Listings returned by the previous stage.
+   *
+   * @param listings the Listings returned by the previous stage, or an empty 
+   *     List if this is the first stage.
+   * @return the Listings passed to the next stage.
+   */
+  List<Listing> run(List<Listing> listings) throws Exception;
+}
@@ -0,0 +1,98 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.search;
+
+/** 
+ * How long a stage of a search took and how many Listings went in and out of 
+ *     it. A stage that runs more than once, like a filter that runs on every 
+ *     batch, adds up the stats of each run.
+ */
+public final class StageStats {
+
+  private final String name;
+  private int runs = 0;
+  private long nanos = 0;
+  private int inputCount = 0;
+  private int outputCount = 0;
+
+  public StageStats(String name) {
+    this.name = name;
+  }
+
+  /**
+   * Adds a run of the stage to these stats.
+   *
+   * @param runNanos how long the run took in nanoseconds.
+   * @param runInputCount the number of Listings that went into the run.
+   * @param runOutputCount the number of Listings that came out of the run.
+   */
+  public void record(long runNanos, int runInputCount, int runOutputCount) {
+    runs++;
+    nanos += runNanos;
+    inputCount += runInputCount;
+    outputCount += runOutputCount;
+  }
+
+  /**
+   * Returns the name of the stage.
+   *
+   * @return the name of the stage.
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Returns the number of times the stage ran.
+   *
+   * @return the number of runs.
+   */
+  public int getRuns() {
+    return runs;
+  }
+
+  /**
+   * Returns how long the stage took over all of its runs.
+   *
+   * @return the duration of the stage in nanoseconds.
+   */
+  public long getNanos() {
+    return nanos;
+  }
+
+  /**
+   * Returns the number of Listings that went into the stage.
+   *
+   * @return the input cardinality of the stage.
+   */
+  public int getInputCount() {
+    return inputCount;
+  }
+
+  /**
+   * Returns the number of Listings that came out of the stage.
+   *
+   * @return the output cardinality of the stage.
+   */
+  public int getOutputCount() {
+    return outputCount;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s: %.1f ms, %d -> %d listings in %d runs", name, 
+        nanos / 1e6, inputCount, outputCount, runs);
+  }
+}
@@ -0,0 +1,41 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.search;
+
+import com.google.sps.data.Listing;
+import com.google.sps.filter.ListingFilter;
+import java.util.List;
+
+/** A ListingFilter that records the StageStats of another ListingFilter. */
+final class TimedListingFilter implements ListingFilter {
+
+  private final ListingFilter filter;
+  private final StageStats stats;
+
+  TimedListingFilter(ListingFilter filter, StageStats stats) {
+    this.filter = filter;
+    this.stats = stats;
+  }
+
+  @Override
+  public List<Listing> filter(List<Listing> listings) throws Exception {
+    long startNanos = System.nanoTime();
+    List<Listing> filteredListings = filter.filter(listings);
+    stats.record(System.nanoTime() - startNanos, listings.size(), 
+        filteredListings.size());
+
+    return filteredListings;
+  }
+}
@@ -0,0 +1,147 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.taskqueue.Queue;
+import com.google.appengine.api.taskqueue.QueueFactory;
+import com.google.appengine.api.taskqueue.TaskOptions;
+import com.google.appengine.api.users.UserService;
+import com.google.appengine.api.users.UserServiceFactory;
+import com.google.sps.data.Listing;
+import com.google.sps.filter.KeywordFilter;
+import com.google.sps.utility.Geocoder;
+import com.google.sps.utility.Geohash;
+import com.google.sps.utility.ListingSpatialIndex;
+import com.google.sps.utility.ValidateInput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet that stores the properties that are computed when a listing is 
+ *     written for listings that were created before the property was added, 
+ *     so that they show up in queries that sort by or project the property.
+ * Listings without coordinates are geocoded by a task each (see 
+ *     GeocodeListing), so that the backfill does not wait for the Geocoding 
+ *     API.
+ */
+@WebServlet("/backfill-listings")
+public class BackfillListings extends HttpServlet {
+
+  // The number of listing Entities to put in datastore, and the number of 
+  //     tasks to add, at a time
+  private static final int BATCH_SIZE = 100;
+
+  /**
+   * Stores the reputation score, the keywords and the geocells of every 
+   *     listing that does not have them, and adds a task to geocode every listing that does not 
+   *     have coordinates.
+   * Only admins can backfill listings.
+   *
+   * @param request an http request to the servlet
+   * @param response a success message or an error message in the form of 
+   *     JSON
+   */
+  @Override
+  public void doPost(HttpServletRequest request, HttpServletResponse response)
+      throws IOException {
+    UserService userService = UserServiceFactory.getUserService();
+    if (!userService.isUserLoggedIn() || !userService.isUserAdmin()) {
+      ValidateInput.createErrorMessage("User is not an admin.", response);
+      return;
+    }
+
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    Queue queue = QueueFactory.getDefaultQueue();
+    List<Entity> batch = new ArrayList<Entity>();
+    List<TaskOptions> tasks = new ArrayList<TaskOptions>();
+    for (Entity listingEntity : 
+        datastore.prepare(new Query("Listing")).asIterable()) {
+      // Reputation scores used to be stored as whole numbers
+      boolean isMissingReputationScore = !(listingEntity.getProperty(
+          Listing.REPUTATION_SCORE_PROPERTY) instanceof Double);
+      boolean isMissingCoordinates = 
+          !listingEntity.hasProperty(Geocoder.LATITUDE_PROPERTY);
+      boolean isMissingGeocells = 
+          !listingEntity.hasProperty(Geohash.GEOCELLS_PROPERTY);
+      boolean isMissingKeywords = 
+          !listingEntity.hasProperty(KeywordFilter.KEYWORDS_PROPERTY);
+      if (!isMissingReputationScore && !isMissingCoordinates 
+          && !isMissingGeocells && !isMissingKeywords) {
+        continue;
+      }
+
+      if (isMissingReputationScore) {
+        Listing.updateReputationScore(listingEntity);
+      }
+      if (isMissingKeywords) {
+        KeywordFilter.indexKeywords(listingEntity);
+      }
+      if (isMissingCoordinates) {
+        // The task also stores the geocells
+        tasks.add(TaskOptions.Builder.withUrl("/geocode-listing")
+            .param("key", KeyFactory.keyToString(listingEntity.getKey())));
+      } else if (isMissingGeocells) {
+        Geohash.updateGeocells(listingEntity);
+      }
+      if (isMissingReputationScore || isMissingKeywords 
+          || !isMissingCoordinates) {
+        batch.add(listingEntity);
+      }
+
+      if (batch.size() == BATCH_SIZE || tasks.size() == BATCH_SIZE) {
+        putBatch(datastore, batch, queue, tasks);
+      }
+    }
+    putBatch(datastore, batch, queue, tasks);
+
+    ValidateInput.createSuccessMessage(response);
+  }
+
+  /**
+   * Puts a batch of listing Entities in datastore, then adds the geocoding 
+   *     tasks, so that a task never reads a listing that the batch then 
+   *     overwrites. Clears the batch and the tasks.
+   *
+   * @param datastore the DatastoreService that connects to the back end.
+   * @param batch the listing Entities to put.
+   * @param queue the queue to add the tasks to.
+   * @param tasks the geocoding tasks to add.
+   */
+  private static void putBatch(DatastoreService datastore, List<Entity> batch, 
+      Queue queue, List<TaskOptions> tasks) {
+    if (!batch.isEmpty()) {
+      datastore.put(batch);
+      for (Entity listingEntity : batch) {
+        ListingSpatialIndex.update(listingEntity);
+      }
+      batch.clear();
+    }
+
+    if (!tasks.isEmpty()) {
+      queue.add(tasks);
+      tasks.clear();
+    }
+  }
+}
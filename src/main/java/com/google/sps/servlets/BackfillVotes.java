@@ -0,0 +1,155 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.users.UserService;
+import com.google.appengine.api.users.UserServiceFactory;
+import com.google.sps.data.Vote;
+import com.google.sps.utility.ValidateInput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet that turns the votes users cast before votes were stored as Vote 
+ *     Entities into Vote Entities. Users used to store the key Strings of 
+ *     the listings they voted on in upvotedListingKeys and 
+ *     downvotedListingKeys, and listings stored the key Strings of the users 
+ *     that upvoted them in upvotedUserKeys.
+ */
+@WebServlet("/backfill-votes")
+public class BackfillVotes extends HttpServlet {
+
+  // The number of Entities to put in datastore at a time
+  private static final int BATCH_SIZE = 100;
+
+  private static final String[] USER_VOTE_PROPERTIES = {"upvotedListingKeys", 
+      "downvotedListingKeys"};
+  private static final String[] VOTES = {"upvote", "downvote"};
+
+  /**
+   * Creates a Vote Entity for each listing key String in a user's 
+   *     upvotedListingKeys and downvotedListingKeys and removes those 
+   *     properties, and removes upvotedUserKeys from listings. Users that 
+   *     were already backfilled are skipped.
+   * Only admins can backfill votes.
+   *
+   * @param request an http request to the servlet
+   * @param response a success message or an error message in the form of 
+   *     JSON
+   */
+  @Override
+  public void doPost(HttpServletRequest request, HttpServletResponse response)
+      throws IOException {
+    UserService userService = UserServiceFactory.getUserService();
+    if (!userService.isUserLoggedIn() || !userService.isUserAdmin()) {
+      ValidateInput.createErrorMessage("User is not an admin.", response);
+      return;
+    }
+
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    List<Entity> batch = new ArrayList<Entity>();
+    try {
+      for (Entity userEntity : 
+          datastore.prepare(new Query("User")).asIterable()) {
+        if (!userEntity.hasProperty(USER_VOTE_PROPERTIES[0]) 
+            && !userEntity.hasProperty(USER_VOTE_PROPERTIES[1])) {
+          continue;
+        }
+
+        // Each vote has the same key every time, so backfilling a user again 
+        //     after a failure does not add votes twice
+        for (int i = 0; i < USER_VOTE_PROPERTIES.length; i++) {
+          addVotes(userEntity, USER_VOTE_PROPERTIES[i], VOTES[i], batch);
+        }
+        batch.add(userEntity);
+        if (batch.size() >= BATCH_SIZE) {
+          putBatch(datastore, batch);
+        }
+      }
+
+      for (Entity listingEntity : 
+          datastore.prepare(new Query("Listing")).asIterable()) {
+        if (listingEntity.hasProperty("upvotedUserKeys")) {
+          listingEntity.removeProperty("upvotedUserKeys");
+          batch.add(listingEntity);
+          if (batch.size() >= BATCH_SIZE) {
+            putBatch(datastore, batch);
+          }
+        }
+      }
+    } catch (Exception e) {
+      ValidateInput.createErrorMessage(e, response);
+      return;
+    }
+
+    if (!batch.isEmpty()) {
+      putBatch(datastore, batch);
+    }
+
+    ValidateInput.createSuccessMessage(response);
+  }
+
+  /**
+   * Adds a Vote Entity to the batch for each listing key String in a 
+   *     property of a user Entity and removes the property.
+   * The newest votes are at the beginning of the property, so the votes get 
+   *     timestamps that keep that order.
+   *
+   * @param userEntity the entity that represents a user.
+   * @param property the name of the property that stores listing keys.
+   * @param vote the vote on each of the listings.
+   * @param batch the Entities to put.
+   */
+  private static void addVotes(Entity userEntity, String property, 
+      String vote, List<Entity> batch) {
+    if (!userEntity.hasProperty(property)) {
+      return;
+    }
+
+    String listingKeysString = (String) userEntity.getProperty(property);
+    long timestamp = System.currentTimeMillis();
+    for (String listingKeyString : listingKeysString.trim().split(" ")) {
+      if (listingKeyString.length() > 0) {
+        Entity voteEntity = Vote.createVoteEntity(userEntity.getKey(), 
+            KeyFactory.stringToKey(listingKeyString), vote);
+        voteEntity.setProperty("timestamp", timestamp--);
+        batch.add(voteEntity);
+      }
+    }
+    userEntity.removeProperty(property);
+  }
+
+  /**
+   * Puts a batch of Entities in datastore and clears the batch.
+   *
+   * @param datastore the DatastoreService that connects to the back end.
+   * @param batch the Entities to put.
+   */
+  private static void putBatch(DatastoreService datastore, List<Entity> batch) {
+    datastore.put(batch);
+    batch.clear();
+  }
+}
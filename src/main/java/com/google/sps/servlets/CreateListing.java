@@ -25,8 +25,12 @@ import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import com.google.sps.data.Listing;
 import com.google.sps.data.User;
+import com.google.sps.filter.KeywordFilter;
 import com.google.sps.utility.AuthenticationUtility;
+import com.google.sps.utility.Geocoder;
+import com.google.sps.utility.ListingSpatialIndex;
 import com.google.sps.utility.ListingConstants;
 import com.google.sps.utility.ValidateInput;
 
@@ -117,15 +121,21 @@ public class CreateListing extends HttpServlet {
       listingEntity.setProperty("tags", tags);
       listingEntity.setProperty("timestamp",timestamp);
       listingEntity.setProperty("type", type);
-      listingEntity.setProperty("upvotedUserKeys", " ");
       listingEntity.setProperty("upvotes", 0);
       listingEntity.setProperty("downvotes", 0);
       listingEntity.setProperty("views", 0);
       listingEntity.setProperty("website", website);
+      Listing.updateReputationScore(listingEntity);
+      KeywordFilter.indexKeywords(listingEntity);
+
+      // Look up the coordinates once, so that searches can measure distances 
+      //     without calling an outside API
+      Geocoder.updateCoordinates(listingEntity);
 
       // Place the new listing entity in datastore and save its key
       DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
       datastore.put(listingEntity);
+      ListingSpatialIndex.update(listingEntity);
 
       // Returns a success message since everything went smoothly
       ValidateInput.createSuccessMessage(response);
@@ -22,6 +22,7 @@ import com.google.appengine.api.users.UserService;
 import com.google.appengine.api.users.UserServiceFactory;
 import com.google.sps.data.Listing;
 import com.google.sps.data.User;
+import com.google.sps.data.Vote;
 import com.google.sps.utility.AuthenticationUtility;
 import com.google.sps.utility.DeleteUserUtility;
 import com.google.sps.utility.ValidateInput;
@@ -61,7 +62,10 @@ public class DeleteUser extends HttpServlet {
       Entity userEntity = AuthenticationUtility.getUserByEmail(datastore,
           userEmail);
 
-      datastore.delete(userEntity.getKey());
+      // The user's votes are children of the user Entity
+      Key userKey = userEntity.getKey();
+      Vote.deleteVotesOfUser(datastore, userKey);
+      datastore.delete(userKey);
 
       ValidateInput.createSuccessMessage(response);
     } else {
@@ -21,9 +21,11 @@ import com.google.appengine.api.users.UserService;
 import com.google.appengine.api.users.UserServiceFactory;
 import com.google.gson.Gson;
 import com.google.sps.data.Listing;
+import com.google.sps.data.ViewerContext;
 import com.google.sps.utility.UpdateListingUtility;
 import com.google.sps.utility.ValidateInput;
 import java.io.IOException;
+import java.util.Collections;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -58,7 +60,10 @@ public class FetchListing extends HttpServlet {
       return;
     }
 
-    Listing listing = Listing.createListing(listingEntity);
+    ViewerContext viewer = ViewerContext.createViewerContext(datastore, 
+        userService);
+    viewer.loadVotes(Collections.singletonList(listingEntity.getKey()));
+    Listing listing = Listing.createListing(listingEntity, viewer);
 
     String jsonListing = new Gson().toJson(listing);
     response.setContentType("application/json;");
@@ -0,0 +1,78 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.users.UserService;
+import com.google.appengine.api.users.UserServiceFactory;
+import com.google.gson.Gson;
+import com.google.sps.data.Listing;
+import com.google.sps.data.ViewerContext;
+import com.google.sps.utility.ValidateInput;
+import com.google.sps.utility.VoteCounter;
+import java.io.IOException;
+import java.util.Collections;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet that returns the whole Listing of a listing that was fetched as a 
+ *     card, when its detailed view is opened.
+ */
+@WebServlet ("/fetch-listing-details")
+public class FetchListingDetails extends HttpServlet {
+  /** 
+   * Creates and returns a Listing from a listing Key.
+   *
+   * @param request which contains the key of the listing
+   * @param response Listing in the form of json or an error message in the 
+   *     form of JSON
+   */
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) 
+      throws IOException {
+    String listingKeyString = ValidateInput.getParameter(request, "listing-key",
+        "");
+
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    
+    UserService userService = UserServiceFactory.getUserService();
+    ViewerContext viewer = ViewerContext.createViewerContext(datastore, 
+        userService);
+
+    Listing listing;
+    try {
+      Entity listingEntity = 
+          datastore.get(KeyFactory.stringToKey(listingKeyString));
+      // The votes on the listing Entity are summed from its vote shards a 
+      //     few seconds after each vote, so the detailed view sums them now
+      VoteCounter.applyVoteCounts(datastore, listingEntity);
+      viewer.loadVotes(Collections.singletonList(listingEntity.getKey()));
+      listing = Listing.createListing(listingEntity, viewer);
+    } catch (Exception e) {
+      ValidateInput.createErrorMessage(e, response);
+      return;
+    }
+
+    String jsonListing = new Gson().toJson(listing);
+    response.setContentType("application/json;");
+    response.getWriter().println(jsonListing);
+  }
+}
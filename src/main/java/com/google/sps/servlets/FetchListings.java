@@ -14,31 +14,44 @@
 
 package com.google.sps.servlets;
 
+import com.google.appengine.api.datastore.AsyncDatastoreService;
 import com.google.appengine.api.datastore.DatastoreService;
 import com.google.appengine.api.datastore.DatastoreServiceFactory;
-import com.google.appengine.api.datastore.Entity;
-import com.google.appengine.api.datastore.FetchOptions;
-import com.google.appengine.api.datastore.PreparedQuery;
 import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.google.appengine.api.datastore.Query.SortDirection;
 import com.google.appengine.api.users.UserService;
 import com.google.appengine.api.users.UserServiceFactory;
 import com.google.gson.Gson;
-import com.google.sps.data.DistanceMatrixOBJ;
+import com.google.gson.stream.JsonWriter;
 import com.google.sps.data.Listing;
 import com.google.sps.data.FetchListingsData;
-import com.google.sps.data.TrackingResponse;
-import com.google.sps.utility.ExcludeByRadius;
+import com.google.sps.data.GeocodeOBJ;
+import com.google.sps.data.ListingCardProjection;
+import com.google.sps.data.ViewerContext;
 import com.google.sps.filter.FilterQuery;
 import com.google.sps.filter.KeywordFilter;
-import com.google.sps.sort.recommended.RecommendedSort;
-import com.google.sps.sort.ReputationSort;
+import com.google.sps.filter.RadiusFilter;
+import com.google.sps.search.NearestStage;
+import com.google.sps.search.PageStage;
+import com.google.sps.search.RankStage;
+import com.google.sps.search.SearchPipeline;
+import com.google.sps.utility.FetchListingsUtility;
+import com.google.sps.utility.Geohash;
+import com.google.sps.utility.GeoUtility;
 import com.google.sps.utility.ListingConstants;
+import com.google.sps.utility.ListingDistances;
+import com.google.sps.utility.ListingSpatialIndex;
+import com.google.sps.utility.ListingStream;
+import com.google.sps.utility.OriginResolver;
 import com.google.sps.utility.UpdateListingUtility;
 import com.google.sps.utility.ValidateInput;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.logging.Logger;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletResponse;
@@ -53,6 +66,9 @@ public class FetchListings extends HttpServlet {
 
   static final HashMap<String, String> FILTERS = new HashMap<String, String>();
 
+  private static final Logger logger = 
+      Logger.getLogger(FetchListings.class.getName());
+
   /** 
    * Returns JSON which is a List of Listings associated with the user or an 
    *     error message if an exception is caught.
@@ -120,100 +136,270 @@ public class FetchListings extends HttpServlet {
       return;
     }
 
-    // Prepare to fetch entities from the backend
-    Query queryListing = new Query("Listing");
+    int pageSize;
+    try {
+      pageSize = ValidateInput.getUserNum(request, "page-size", 
+        ListingConstants.PAGE_SIZE_MIN, ListingConstants.PAGE_SIZE_MAX, 
+        ListingConstants.LISTING_LIMIT);
+    } catch (Exception e) {
+      ValidateInput.createErrorMessage(e, response);
+      return;
+    }
 
-    // Add a type filter for the Listings property if there are any filters
+    // The cursor of the previous page, or "" to fetch the first page
+    String cursorString = ValidateInput.getParameter(request, "cursor", "");
+
+    // "card" to only return the fields shown on a listing preview, or "full" 
+    //     to return whole listings
+    String view = ValidateInput.getParameter(request, "view", "full");
+
+    // "true" to rank recommended listings by the travel time in traffic at 
+    //     this time of day instead of by distance
+    boolean isTravelTime = ValidateInput.getParameter(request, "travel-time", 
+        "false").equals("true");
+
+    // Resolve the user's location once, so that distances to listings can be 
+    //     measured locally. Repeat searches from the same location are 
+    //     answered from the cache.
+    GeocodeOBJ origin = null;
+    if (!userLocation.equals("")) {
+      try {
+        origin = OriginResolver.resolve(userLocation);
+      } catch (IOException e) {
+        // Distances are measured by the Distance Matrix API instead
+        logger.warning("Could not geocode user: " + e.getMessage());
+      }
+    }
+
+    // Nearest first needs the user's coordinates, so without them the 
+    //     listings are sorted as recommended
+    boolean isOriginFound = origin != null && origin.isFound();
+    if (sortBy == 4 && !isOriginFound) {
+      sortBy = 1;
+    }
+
+    // Until the spatial index of this instance is loaded, which is usually 
+    //     done by the warmup request, nearest first is sorted as recommended
+    if (sortBy == 4 && !ListingSpatialIndex.isReady(
+        DatastoreServiceFactory.getDatastoreService())) {
+      sortBy = 1;
+    }
+
+    // Each keyword is also fetched with its own query, and a listing that 
+    //     matches more than one keyword is only shown once
+    List<String> keywords = 
+        KeywordFilter.getQueryKeywords(keywordFiltersString);
+    List<String> queryKeywords = new ArrayList<String>(keywords);
+    if (queryKeywords.isEmpty()) {
+      queryKeywords.add(null);
+    }
+
+    // In a radius search, only the geocells around the user are queried. 
+    //     Listings whose location could not be found are all in UNKNOWN_CELL 
+    //     and are measured by the radius filter.
+    // Keyword queries are not split by geocell, as that would need an index 
+    //     for every combination of geocell, keyword and type and multiply 
+    //     the number of queries. The radius filter cuts the listings they 
+    //     return that are too far away.
+    List<String> geocells = new ArrayList<String>();
+    if (isOriginFound && keywords.isEmpty()) {
+      List<String> coveringCells = Geohash.getCoveringCells(
+          origin.getLatitude(), origin.getLongitude(), 
+          GeoUtility.radiusInMeters(radiusFilter));
+      if (coveringCells != null) {
+        geocells.addAll(coveringCells);
+        geocells.add(Geohash.UNKNOWN_CELL);
+      }
+    }
+    if (geocells.isEmpty()) {
+      geocells.add(null);
+    }
+
+    // Each checked type is fetched with its own query instead of one query 
+    //     that combines the types with OR, so that the queries run in 
+    //     parallel and can be paged with cursors.
     initializeFilters();
-    FilterQuery.filterQuery(typeFiltersString, FILTERS, "type", queryListing);
-    
-    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-    PreparedQuery preparedQueryListings = datastore.prepare(queryListing);
+    List<String> types = FilterQuery.getFilterValues(typeFiltersString, 
+        FILTERS);
+    List<String> queryTypes = new ArrayList<String>(types);
+    if (queryTypes.isEmpty()) {
+      queryTypes.add(null);
+    }
 
-    FetchOptions entitiesLimit = FetchOptions.Builder.withLimit(
-        ListingConstants.LISTING_LIMIT);
-    List<Entity> listingEntities = preparedQueryListings.asList(entitiesLimit);
+    // Sorting by reputation is done by the queries, using the reputation score 
+    //     stored on each listing
+    String sortProperty = null;
+    if (sortBy == 2) {
+      sortProperty = Listing.REPUTATION_SCORE_PROPERTY;
+    }
+
+    AsyncDatastoreService asyncDatastore = 
+        DatastoreServiceFactory.getAsyncDatastoreService();
+    List<ListingStream> streams = new ArrayList<ListingStream>();
+    try {
+      // Nearest first finds listings in the spatial index instead of with 
+      //     queries
+      if (sortBy != 4) {
+        String[] cursorStrings = FetchListingsUtility.splitCursorString(
+            cursorString, 
+            queryTypes.size() * geocells.size() * queryKeywords.size());
+        for (String type : queryTypes) {
+          for (String geocell : geocells) {
+            for (String keyword : queryKeywords) {
+              Query queryListing = createListingQuery(type, geocell, keyword, 
+                  sortProperty);
 
-    // If any keywords are specified, filter out any listings that don't match
-    if (keywordFiltersString.length() > 0) {
-      listingEntities = KeywordFilter.filterByKeyword(listingEntities,
-          keywordFiltersString);
+              // In card mode, only load the properties shown on a listing 
+              //     preview, unless the query filters by a property that 
+              //     would make its projection index too large
+              ListingCardProjection cardProjection = null;
+              if (view.equals("card") && geocell == null && keyword == null) {
+                cardProjection = 
+                    new ListingCardProjection(type, sortProperty);
+                cardProjection.addProjections(queryListing);
+              }
+
+              streams.add(ListingStream.openListingStream(asyncDatastore, 
+                  queryListing, cardProjection, sortProperty, 
+                  cursorStrings[streams.size()], pageSize));
+            }
+          }
+        }
+      }
+    } catch (Exception e) {
+      ValidateInput.createErrorMessage(e, response);
+      return;
     }
 
-    // Turn Entities into Listings
+    // The user is looked up while the queries are running
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
     UserService userService = UserServiceFactory.getUserService();
+    ViewerContext viewer = ViewerContext.createViewerContext(datastore, 
+        userService);
+
+    // The stages of the search, in the order they run
+    SearchPipeline pipeline = new SearchPipeline("/fetch-listings");
+
+    // Each listing is measured once and the distance is shared by the radius 
+    //     filter and the recommended sort
+    ListingDistances distances = new ListingDistances(userLocation, origin, 
+        isTravelTime);
+
+    // Listings that are too far away are filtered out as they are fetched, so 
+    //     that the page can be filled with listings further down the query and 
+    //     only the listings in the radius are ranked.
+    if (!userLocation.equals("") && sortBy != 4) {
+      pipeline.addFilter("geo-cut", new RadiusFilter(distances, radiusFilter));
+    }
+
+    PageStage pageStage = null;
+    NearestStage nearestStage = null;
+    if (sortBy == 4) {
+      // The spatial index returns the listings in the radius nearest first, 
+      //     so they are not ranked again
+      nearestStage = new NearestStage(datastore, viewer, origin, 
+          GeoUtility.radiusInMeters(radiusFilter), types, 
+          keywordFiltersString, cursorString, pageSize);
+      pipeline.addStage(nearestStage);
+    } else {
+      // Stream Entities into a page of Listings
+      pageStage = new PageStage(streams, pageSize, viewer, pipeline);
+      pipeline.addStage(pageStage);
+
+      // Sort the Listings based on sort parameter
+      pipeline.addStage(new RankStage(sortBy, datastore, viewer, distances));
+    }
+
     List<Listing> listings;
     try {
-      listings = entitiesToListings(datastore, listingEntities, userService);
+      listings = pipeline.run();
     } catch (Exception e) {
       ValidateInput.createErrorMessage(e, response);
       return;
     }
 
-    // Sort the Listings based on sort parameter
-    // The sorting algorithm will be given a List<Listing> and will return a 
-    //     List<Listing>
-    if (sortBy == 1) {
-      try {
-        listings = RecommendedSort.sortByRecommended(datastore, listings, 
-            userService, userLocation);
-      } catch (Exception e) {
-        ValidateInput.createErrorMessage(e, response);
-        return;
-      }
-    } else if (sortBy == 2) {
-      listings = ReputationSort.sortByReputation(listings);
+    String nextCursorString;
+    if (nearestStage != null) {
+      nextCursorString = nearestStage.getNextCursorString();
     } else {
-      // TODO call on LeastViewed sorting algorithm
+      nextCursorString = pageStage.getNextCursorString();
     }
 
-    String formattedUserLocation = "";
-     
-    if (!userLocation.equals("")) {   
-      DistanceMatrixOBJ distance =  ExcludeByRadius.convertJsonToDMObject(
-        ExcludeByRadius.distanceMatrixJsonURL(userLocation, listings));
-     
-      listings = ExcludeByRadius.cutList(listings, distance, radiusFilter);
-      formattedUserLocation = distance.getOriginAddress();
+    String userLocationName = "";
+    if (isOriginFound) {
+      userLocationName = origin.getDisplayName();
     }
 
-    FetchListingsData fetchListingsData = new FetchListingsData(listings, formattedUserLocation);
+    FetchListingsData fetchListingsData = new FetchListingsData(listings, 
+        userLocationName, nextCursorString);
 
-    TrackingResponse trackingListings = new TrackingResponse(timeToBack, 
-        fetchListingsData);
+    long serializeStartNanos = System.nanoTime();
+    writeTrackingResponseJson(timeToBack, fetchListingsData, response);
+    pipeline.record("serialize", serializeStartNanos, listings.size(), 
+        listings.size());
+    pipeline.logStats();
+  }
 
-    String jsonTrackingListings = new Gson().toJson(trackingListings);
+  /**
+   * Writes a TrackingResponse that contains fetchListingsData straight to the 
+   *     response as JSON, so that listings are sent as they are turned into 
+   *     JSON instead of after the whole JSON String is built.
+   *
+   * @param call the call number of the rpc.
+   * @param fetchListingsData the listings and user location to return.
+   * @param response the response to write the JSON to.
+   */
+  private static void writeTrackingResponseJson(int call, 
+      FetchListingsData fetchListingsData, HttpServletResponse response) 
+      throws IOException {
     response.setContentType("application/json;");
-    response.getWriter().println(jsonTrackingListings);
+
+    // Escape HTML characters the same way new Gson().toJson() does
+    JsonWriter jsonWriter = new JsonWriter(response.getWriter());
+    jsonWriter.setHtmlSafe(true);
+
+    // The same JSON as a TrackingResponse
+    jsonWriter.beginObject();
+    jsonWriter.name("call").value(call);
+    jsonWriter.name("response");
+    fetchListingsData.writeJson(new Gson(), jsonWriter);
+    jsonWriter.endObject();
+    jsonWriter.flush();
   }
 
   /**
-   * Turns a List of listing Entities to a List of Listings.
+   * Creates a query for listings of a type in a geocell that match a keyword.
    *
-   * @param datastore the DatastoreService that connects to the back end.
-   * @param listingEntities a List of Entities to turn into Listings.
-   * @param userService used to get a user's email and to determine if the user 
-   *     is logged in.
-   * @return a List<Listing> created from a List<Entity>.
+   * @param type the type of the listings, or null to match every type.
+   * @param geocell the geohash of the cell the listings are in, or null to 
+   *     match every location.
+   * @param keyword the keyword to match, or null to match every listing.
+   * @param sortProperty the property to sort the listings by in descending 
+   *     order, or null to return them in key order.
+   * @return a query that returns listing Entities.
    */
-  public static List<Listing> entitiesToListings(DatastoreService datastore,
-      List<Entity> listingEntities, UserService userService) {
-    List<Listing> listings = new ArrayList<Listing>();
+  private static Query createListingQuery(String type, String geocell, 
+      String keyword, String sortProperty) {
+    Query queryListing = new Query("Listing");
+    if (type != null) {
+      FilterQuery.addFilter(queryListing, 
+          new FilterPredicate("type", FilterOperator.EQUAL, type));
+    }
+    if (geocell != null) {
+      FilterQuery.addFilter(queryListing, new FilterPredicate(
+          Geohash.GEOCELLS_PROPERTY, FilterOperator.EQUAL, geocell));
+    }
 
-    if (userService.isUserLoggedIn()) {
-      String userEmail = userService.getCurrentUser().getEmail();
+    // If a keyword is specified, only match listings that are indexed under it
+    if (keyword != null) {
+      KeywordFilter.filterQuery(keyword, queryListing);
+    }
 
-      // Determine which listings are owned by the user.
-      for (Entity listingEntity : listingEntities) {
-        listings.add(Listing.createListing(listingEntity, userEmail));
-      }
-    } else {
-      for (Entity listingEntity : listingEntities) {
-        listings.add(Listing.createListing(listingEntity));
-      }
+    if (sortProperty != null) {
+      queryListing.addSort(sortProperty, SortDirection.DESCENDING);
     }
 
-    return listings;
+    return queryListing;
   }
 
   /**
@@ -0,0 +1,75 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.sps.utility.ValidateInput;
+import com.google.sps.utility.VoteJournal;
+import java.io.IOException;
+import java.util.logging.Logger;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet that applies journaled votes (see VoteJournal). Called from the 
+ *     task queue a few seconds after a vote is journaled, and every minute 
+ *     by cron in case a task was not scheduled (see WEB-INF/cron.xml).
+ */
+@WebServlet("/flush-votes")
+public class FlushVotes extends HttpServlet {
+
+  private static final Logger logger = 
+      Logger.getLogger(FlushVotes.class.getName());
+
+  /**
+   * Applies journaled votes. Only the task queue and the cron service can 
+   *     flush votes.
+   *
+   * @param request an http request to the servlet
+   * @param response a success message or an error message in the form of 
+   *     JSON
+   */
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response)
+      throws IOException {
+    // App Engine removes these headers from requests that are not from cron 
+    //     or the task queue
+    boolean isCron = "true".equals(request.getHeader("X-Appengine-Cron"));
+    boolean isTask = request.getHeader("X-AppEngine-QueueName") != null;
+    if (!isCron && !isTask) {
+      ValidateInput.createErrorMessage(
+          "Request is not from cron or a task queue.", response);
+      return;
+    }
+
+    try {
+      DatastoreService datastore = 
+          DatastoreServiceFactory.getDatastoreService();
+      int flushedCount = VoteJournal.flush(datastore);
+      if (flushedCount > 0) {
+        logger.info("Flushed " + flushedCount + " journaled votes");
+      }
+    } catch (Exception e) {
+      ValidateInput.createErrorMessage(e, response);
+      return;
+    }
+
+    ValidateInput.createSuccessMessage(response);
+  }
+}
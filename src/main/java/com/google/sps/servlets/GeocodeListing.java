@@ -0,0 +1,65 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.sps.utility.Geocoder;
+import com.google.sps.utility.ValidateInput;
+import java.io.IOException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet that stores the coordinates and geocells of a listing. Called from 
+ *     the task queue for each listing that BackfillListings finds without 
+ *     coordinates, so that the backfill does not wait for the Geocoding API.
+ */
+@WebServlet("/geocode-listing")
+public class GeocodeListing extends HttpServlet {
+  /**
+   * Geocodes a listing. Only the task queue can call this.
+   *
+   * @param request an http request with the key of the listing
+   * @param response a success message or an error message in the form of 
+   *     JSON
+   */
+  @Override
+  public void doPost(HttpServletRequest request, HttpServletResponse response)
+      throws IOException {
+    // App Engine removes this header from requests that are not from the 
+    //     task queue
+    if (request.getHeader("X-AppEngine-QueueName") == null) {
+      ValidateInput.createErrorMessage("Request is not from a task queue.", 
+          response);
+      return;
+    }
+
+    try {
+      String listingKeyString = ValidateInput.getParameter(request, "key", "");
+      Geocoder.geocodeListing(DatastoreServiceFactory.getDatastoreService(), 
+          KeyFactory.stringToKey(listingKeyString));
+    } catch (Exception e) {
+      // The task queue tries the task again if it fails
+      response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+      ValidateInput.createErrorMessage(e, response);
+      return;
+    }
+
+    ValidateInput.createSuccessMessage(response);
+  }
+}
@@ -0,0 +1,68 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.users.UserService;
+import com.google.appengine.api.users.UserServiceFactory;
+import com.google.sps.utility.GeoUtility;
+import com.google.sps.utility.ValidateInput;
+import java.io.IOException;
+import java.util.logging.Logger;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet that refreshes the cached travel times of the most requested pairs 
+ *     of locations at the start of each time bucket (see WEB-INF/cron.xml).
+ */
+@WebServlet("/refresh-travel-times")
+public class RefreshTravelTimes extends HttpServlet {
+
+  private static final Logger logger = 
+      Logger.getLogger(RefreshTravelTimes.class.getName());
+
+  /**
+   * Refreshes the travel times. Only the cron service and admins can refresh 
+   *     travel times.
+   *
+   * @param request an http request to the servlet
+   * @param response a success message or an error message in the form of 
+   *     JSON
+   */
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response)
+      throws IOException {
+    // App Engine removes this header from requests that are not from cron
+    boolean isCron = "true".equals(request.getHeader("X-Appengine-Cron"));
+    UserService userService = UserServiceFactory.getUserService();
+    if (!isCron 
+        && (!userService.isUserLoggedIn() || !userService.isUserAdmin())) {
+      ValidateInput.createErrorMessage("User is not an admin.", response);
+      return;
+    }
+
+    try {
+      int refreshedCount = GeoUtility.refreshTravelTimes();
+      logger.info("Refreshed " + refreshedCount + " travel times");
+    } catch (Exception e) {
+      ValidateInput.createErrorMessage(e, response);
+      return;
+    }
+
+    ValidateInput.createSuccessMessage(response);
+  }
+}
@@ -23,9 +23,10 @@ import com.google.appengine.api.users.UserService;
 import com.google.appengine.api.users.UserServiceFactory;
 import com.google.gson.Gson;
 import com.google.sps.data.Listing;
-import com.google.sps.data.User;
 import com.google.sps.utility.AuthenticationUtility;
 import com.google.sps.utility.ValidateInput;
+import com.google.sps.utility.VoteEngine;
+import com.google.sps.utility.VoteJournal;
 import java.io.IOException;
 import java.util.HashMap;
 import javax.servlet.annotation.WebServlet;
@@ -63,7 +64,17 @@ public class Reputation extends HttpServlet {
         Entity currentUser = AuthenticationUtility.getCurrentUserEntity(datastore,
             userService);
 
-        processVote(datastore, userService, currentUser, listingKeyString, vote);
+        Key listingKey = KeyFactory.stringToKey(listingKeyString);
+        if (VoteJournal.isEnabled()) {
+          // The vote is applied with other votes a few seconds later
+          VoteJournal.append(datastore, currentUser.getKey(), listingKey, 
+              vote);
+        } else {
+          // The user's vote and the listing's shard are read and written 
+          //     together in one transaction
+          VoteEngine.processVote(datastore, currentUser.getKey(), listingKey, 
+              vote);
+        }
       } catch (Exception e) {
         ValidateInput.createErrorMessage(e, response);
       }
@@ -72,94 +83,6 @@ public class Reputation extends HttpServlet {
     }
   }
 
-  /**
-   * Process a vote for a listing by updating the relevant datastore properties
-   * of a listing and a user.
-   *
-   * @param datastore a datastore service instance
-   * @param userEntity an entity representing a User
-   * @param listingKey the key representing a specific Listing entity
-   * @param vote a string representing the type of vote to received 
-   */
-  private void processVote(DatastoreService datastore, UserService userService,
-      Entity userEntity, String listingKeyString, String vote) throws Exception {
-
-    String userUpvotes = User.getListingKeysAsString(userEntity, "upvotedListingKeys");
-    String userDownvotes = User.getListingKeysAsString(userEntity, "downvotedListingKeys");
-    Key listingKey = KeyFactory.stringToKey(listingKeyString);
-
-    if (userUpvotes.contains(listingKeyString)) {  
-      // If a listing is already present in a user's upvotes when this function
-      //    is called, they are changing their vote (to downvote or neutral)
-      removeVote(datastore, userService, userEntity, listingKey, "upvote");
-      
-      // Check if their new vote was an upvote, and add it to the user and the
-      //    listing if it was.
-      addVote(datastore, userService, userEntity, listingKey, vote);
-    } else if (userDownvotes.contains(listingKeyString)) {
-      // If a listing is already present in a user's downvotes when this function
-      //    is called, they are changing their vote (to upvote or neutral)
-      removeVote(datastore, userService, userEntity, listingKey, "downvote");
-
-      // Check if their new vote was an upvote, and add it to the user and the
-      //    listing if it was.
-      addVote(datastore, userService, userEntity, listingKey, vote);
-    } else {
-      // If the user's vote was previously neutral, just add their new vote
-      addVote(datastore, userService, userEntity, listingKey, vote);
-    }
-  }
-
-  /**
-   * Add a listing key to one of a User's vote properties and increment
-   * the respective property of the listing entity.
-   *
-   * @param datastore a datastore service instance
-   * @param userEntity an entity representing a User
-   * @param listingKey the key representing a specific Listing entity
-   * @param vote a string representing the type of vote to add to the user
-   *    and the listing being interacted with 
-   */
-  private void addVote(DatastoreService datastore, UserService userService,
-      Entity userEntity, Key listingKey, String vote) throws Exception {
-    if (vote.equals("upvote")) {
-      User.addListingKeyToUserEntity(datastore, userEntity, 
-          listingKey, "upvotedListingKeys");
-      Listing.incrementListingProperty(datastore, listingKey, "upvotes");
-      User.addCurrentUserKeyToListingEntity(datastore, userService,
-          listingKey, "upvotedUserKeys");
-    } else if (vote.equals("downvote")) {
-      User.addListingKeyToUserEntity(datastore, userEntity, 
-          listingKey, "downvotedListingKeys");
-      Listing.incrementListingProperty(datastore, listingKey, "downvotes");
-    }
-  }
-
-  /**
-   * Remove a listing key from one of a User's vote properties and decrement
-   * the respective property of the listing entity.
-   *
-   * @param datastore a datastore service instance
-   * @param userEntity an entity representing a User
-   * @param listingKey the key representing a specific Listing entity
-   * @param vote a string representing the type of vote to remove from
-   *    the user and the listing being interacted with 
-   */
-  private void removeVote(DatastoreService datastore, UserService userService,
-      Entity userEntity, Key listingKey, String vote) throws Exception {
-    if (vote.equals("upvote")) {
-      User.removeListingKeyFromUserEntity(datastore, userEntity, 
-          listingKey, "upvotedListingKeys");
-      Listing.decrementListingProperty(datastore, listingKey, "upvotes");
-      User.removeCurrentUserKeyFromListingEntity(datastore, userService,
-          listingKey, "upvotedUserKeys");
-    } else if (vote.equals("downvote")) {
-      User.removeListingKeyFromUserEntity(datastore, userEntity, 
-          listingKey, "downvotedListingKeys");
-      Listing.decrementListingProperty(datastore, listingKey, "downvotes");
-    }
-  }
-
   /**
    * Determine whether or not an input vote is invalid.
    *
@@ -176,24 +99,12 @@ public class Reputation extends HttpServlet {
   }
 
   /**
-   * Generate and return a reputation score from a listing entity)
+   * Return the reputation score stored in a listing entity
    * 
-   * @param listingEntity the entity of the listing to generate a score for
-   * @return int representing a listing's reputationScore
+   * @param listingEntity the entity of the listing to get the score of
+   * @return double representing a listing's reputationScore, between 0 and 1
    */
-  public static int generateReputationScore(Entity listingEntity) {
-    final double WEIGHT_1 = .20;
-    final double WEIGHT_2 = .80;
-    
-    int upvotes = (int) new Long(
-        (long) listingEntity.getProperty("upvotes")).intValue();
-    int downvotes = (int) new Long(
-        (long) listingEntity.getProperty("downvotes")).intValue();
-    double upvotePercentage = upvotes / (upvotes + downvotes);
-
-    int reputationScore = (int) ((upvotes * WEIGHT_1) 
-        + ((upvotes * upvotePercentage) * WEIGHT_2));
-
-    return reputationScore;
+  public static double generateReputationScore(Entity listingEntity) {
+    return Listing.getReputationScore(listingEntity);
   }
 }
@@ -23,6 +23,7 @@ import com.google.gson.Gson;
 import com.google.sps.data.Listing;
 import com.google.sps.utility.EntityUtility;
 import com.google.sps.utility.ListingConstants;
+import com.google.sps.utility.ListingSpatialIndex;
 import com.google.sps.utility.UpdateListingUtility;
 import com.google.sps.utility.ValidateInput;
 import java.io.IOException;
@@ -63,6 +64,7 @@ public class UpdateListing extends HttpServlet {
       UpdateListingUtility.updateListingEntity(datastore, listingEntity,
           request);
       datastore.put(listingEntity);
+      ListingSpatialIndex.update(listingEntity);
     } catch (Exception e) {
       ValidateInput.createErrorMessage(e, response);
       return;
@@ -21,11 +21,13 @@ import com.google.appengine.api.users.UserService;
 import com.google.appengine.api.users.UserServiceFactory;
 import com.google.gson.Gson;
 import com.google.sps.data.Listing;
+import com.google.sps.data.ViewerContext;
 import com.google.sps.utility.EntityUtility;
 import com.google.sps.utility.ListingConstants;
 import com.google.sps.utility.UpdateListingUtility;
 import com.google.sps.utility.ValidateInput;
 import java.io.IOException;
+import java.util.Collections;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -59,8 +61,11 @@ public class UpdateListingPreview extends HttpServlet {
       return;
     }
 
+    ViewerContext viewer = ViewerContext.createViewerContext(datastore, 
+        userService);
+    viewer.loadVotes(Collections.singletonList(listingEntity.getKey()));
     Listing[] listings = new Listing[2];
-    listings[0] = Listing.createListing(listingEntity);
+    listings[0] = Listing.createListing(listingEntity, viewer);
 
     // Create preview of updated entity
     try {
@@ -71,7 +76,7 @@ public class UpdateListingPreview extends HttpServlet {
       return;
     }
 
-    listings[1] = Listing.createListing(listingEntity);
+    listings[1] = Listing.createListing(listingEntity, viewer);
 
     String jsonListings = new Gson().toJson(listings);
     response.setContentType("application/json;");
@@ -0,0 +1,51 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.sps.utility.ListingSpatialIndex;
+import java.io.IOException;
+import java.util.logging.Logger;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet that App Engine calls when it starts an instance, before the 
+ *     instance gets user requests. Loads the ListingSpatialIndex, so that no 
+ *     search waits for it.
+ */
+@WebServlet("/_ah/warmup")
+public class WarmUp extends HttpServlet {
+
+  private static final Logger logger = 
+      Logger.getLogger(WarmUp.class.getName());
+
+  /**
+   * Loads the caches of this instance.
+   *
+   * @param request an http request from App Engine
+   * @param response an empty response
+   */
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response)
+      throws IOException {
+    long startMillis = System.currentTimeMillis();
+    ListingSpatialIndex.isReady(DatastoreServiceFactory.getDatastoreService());
+    logger.info("Loaded the listing index in " 
+        + (System.currentTimeMillis() - startMillis) + " ms");
+  }
+}
@@ -15,7 +15,6 @@
 package com.google.sps.sort;
 
 import com.google.sps.data.Listing;
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
@@ -24,21 +23,21 @@ import java.util.List;
 public final class ReputationSort {
   /**
    * Sorts the given List of Listings by using a reputation score based upon
-   * the listings' existing downvotes and upvotes.
+   * the listings' existing downvotes and upvotes, which is stored with each 
+   * listing.
    *
    * @param listings The List of Listings to be sort.
    * @return a List of Listings sorted by their reputation score
    */
   public static List<Listing> sortByReputation(List<Listing> listings) {
-
-    // Generate reputation scores for the listings to be sorted
-    for (int i = 0; i < listings.size(); i++) {
-      listings.get(i).generateReputationScore();
-    }
-
-    // Sort listings into descending order by their reputation score
-    Collections.sort(listings,
-        (a, b) -> (-1 * a.reputationScore.compareTo(b.reputationScore)));
+    // Sort listings into descending order by their reputation score, which 
+    //     was read with the listings
+    Collections.sort(listings, new Comparator<Listing>() {
+      @Override
+      public int compare(Listing a, Listing b) {
+        return Double.compare(b.getReputationScore(), a.getReputationScore());
+      }
+    });
 
     return listings;
   }
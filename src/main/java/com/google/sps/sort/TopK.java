@@ -0,0 +1,204 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.sort;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Selects the items with the highest scores, k at a time, without sorting 
+ *     every item.
+ * Items with the same score keep their original order. Each call to next 
+ *     continues after the last item returned by the previous call, so the 
+ *     next page can be selected from the same scores.
+ */
+public final class TopK {
+
+  private final double[] scores;
+  // The score and index of the last item returned by next, or -1 if next has 
+  //     not been called
+  private double lastScore = Double.POSITIVE_INFINITY;
+  private int lastIndex = -1;
+
+  public TopK(double[] scores) {
+    this.scores = scores;
+  }
+
+  /**
+   * Creates a TopK of whole number scores, like counts and timestamps, which 
+   *     are all smaller than 2^53 and so are exact as doubles.
+   *
+   * @param scores the score of each item.
+   */
+  public TopK(long[] scores) {
+    this(toDoubles(scores));
+  }
+
+  /**
+   * Returns the items with the highest scores, in descending order of score, 
+   *     out of the items ranked after the last call to next.
+   * Takes O(n log k) time for n items.
+   *
+   * @param k the maximum number of items to return.
+   * @return the indices of at most k items.
+   */
+  public int[] next(int k) {
+    // A heap of the best items so far where the root is the worst of them
+    int[] heap = new int[Math.max(k, 0)];
+    int size = 0;
+    for (int i = 0; i < scores.length; i++) {
+      if (!isAfterLast(i)) {
+        continue;
+      }
+
+      if (size < heap.length) {
+        heap[size] = i;
+        siftUp(heap, size);
+        size++;
+      } else if (size > 0 && ranksBefore(i, heap[0])) {
+        heap[0] = i;
+        siftDown(heap, 0, size);
+      }
+    }
+
+    // Take the worst item off the heap until it is empty, so the items end 
+    //     up in order from best to worst
+    int[] indices = new int[size];
+    for (int end = size - 1; end >= 0; end--) {
+      indices[end] = heap[0];
+      heap[0] = heap[end];
+      siftDown(heap, 0, end);
+    }
+
+    if (size > 0) {
+      lastIndex = indices[size - 1];
+      lastScore = scores[lastIndex];
+    }
+
+    return indices;
+  }
+
+  /**
+   * Returns the k items with the highest scores in descending order of 
+   *     score.
+   *
+   * @param items the items to select from.
+   * @param scores the score of each item.
+   * @param k the maximum number of items to return.
+   * @return a List of at most k items.
+   */
+  public static <T> List<T> select(List<T> items, long[] scores, int k) {
+    return select(items, toDoubles(scores), k);
+  }
+
+  /**
+   * Returns the k items with the highest scores in descending order of 
+   *     score.
+   *
+   * @param items the items to select from.
+   * @param scores the score of each item.
+   * @param k the maximum number of items to return.
+   * @return a List of at most k items.
+   */
+  public static <T> List<T> select(List<T> items, double[] scores, int k) {
+    int[] indices = new TopK(scores).next(k);
+    List<T> selectedItems = new ArrayList<T>(indices.length);
+    for (int index : indices) {
+      selectedItems.add(items.get(index));
+    }
+
+    return selectedItems;
+  }
+
+  /**
+   * Turns whole number scores into doubles.
+   *
+   * @param scores the score of each item.
+   * @return the scores as doubles.
+   */
+  private static double[] toDoubles(long[] scores) {
+    double[] doubleScores = new double[scores.length];
+    for (int i = 0; i < scores.length; i++) {
+      doubleScores[i] = scores[i];
+    }
+
+    return doubleScores;
+  }
+
+  /**
+   * Returns true if item a ranks before item b, which is when a has a higher 
+   *     score or the same score and comes first.
+   *
+   * @param a the index of an item.
+   * @param b the index of another item.
+   * @return a boolean that states whether a ranks before b.
+   */
+  private boolean ranksBefore(int a, int b) {
+    return scores[a] > scores[b] || (scores[a] == scores[b] && a < b);
+  }
+
+  /**
+   * Returns true if an item ranks after the last item returned by next.
+   *
+   * @param index the index of the item.
+   * @return a boolean that states whether the item has not been returned yet.
+   */
+  private boolean isAfterLast(int index) {
+    return lastIndex == -1 || scores[index] < lastScore 
+        || (scores[index] == lastScore && index > lastIndex);
+  }
+
+  /**
+   * Moves an item up the heap until its parent ranks before it.
+   *
+   * @param heap the heap of item indices.
+   * @param position the position of the item in the heap.
+   */
+  private void siftUp(int[] heap, int position) {
+    int item = heap[position];
+    while (position > 0) {
+      int parent = (position - 1) / 2;
+      if (!ranksBefore(heap[parent], item)) {
+        break;
+      }
+      heap[position] = heap[parent];
+      position = parent;
+    }
+    heap[position] = item;
+  }
+
+  /**
+   * Moves an item down the heap until both of its children rank after it.
+   *
+   * @param heap the heap of item indices.
+   * @param position the position of the item in the heap.
+   * @param size the number of items in the heap.
+   */
+  private void siftDown(int[] heap, int position, int size) {
+    int item = heap[position];
+    while (2 * position + 1 < size) {
+      int child = 2 * position + 1;
+      if (child + 1 < size && ranksBefore(heap[child], heap[child + 1])) {
+        child++;
+      }
+      if (!ranksBefore(item, heap[child])) {
+        break;
+      }
+      heap[position] = heap[child];
+      position = child;
+    }
+    heap[position] = item;
+  }
+}
@@ -16,13 +16,11 @@ package com.google.sps.sort.recommended;
 
 import com.google.appengine.api.datastore.DatastoreService;
 import com.google.appengine.api.datastore.Entity;
-import com.google.appengine.api.users.UserService;
-import com.google.sps.data.DistanceMatrixOBJ;
 import com.google.sps.data.Listing;
 import com.google.sps.data.User;
+import com.google.sps.data.ViewerContext;
 import com.google.sps.sort.recommended.SortByUpvotedListings;
-import com.google.sps.utility.AuthenticationUtility;
-import com.google.sps.utility.ExcludeByRadius;
+import com.google.sps.utility.ListingDistances;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -38,28 +36,29 @@ public final class RecommendedSort {
    * 
    * @param datastore the DatastoreService that connects to the back end.
    * @param listings The List<Listing> to sort. 
+   * @param viewer the user viewing these listings.
+   * @param distances the distances between the user and listings during 
+   *     this request.
    * @return a List<Listing> based on a User's upvoted listings or the listings 
    *     reputation and location.
    */
   public static List<Listing> sortByRecommended(DatastoreService datastore, 
-      List<Listing> listings, UserService userService, String userLocation) throws Exception {
+      List<Listing> listings, ViewerContext viewer, 
+      ListingDistances distances) throws Exception {
     List<Listing> sortedListings = new ArrayList<Listing>();
-    // If the user is logged in then sort by upvoted listings first
-    if (userService.isUserLoggedIn()) {
-      String userEmail = userService.getCurrentUser().getEmail();
-      Entity userEntity = AuthenticationUtility.getUserByEmail(datastore, 
-          userEmail);
-
+    // If the user has an account then sort by upvoted listings first
+    Entity userEntity = viewer.getUserEntity();
+    if (userEntity != null) {
       // Removes the Listings in the List it returns from listings 
       sortedListings.addAll(SortByUpvotedListings.sortByUpvotedListings(
           datastore, listings, userEntity));
     }
     
     // If the unauthenticated user has not entered a location we show them the most recent listings.
-    if (userLocation.equals("")) {
+    if (distances.getUserLocation().equals("")) {
       sortedListings.addAll(sortByTime(listings));
     } else {
-      sortedListings.addAll(sortByDistanceAndReputation(listings, userLocation));
+      sortedListings.addAll(sortByDistanceAndReputation(listings, distances));
     }
 
     return sortedListings;
@@ -70,26 +69,35 @@ public final class RecommendedSort {
    *     reputation score.
    *
    *  @param listings List of listings to be sorted
-   *  @param userLocation current location of user 
+   *  @param distances the distances between the user and listings, which 
+   *      reuses the distances measured by the radius filter
    *  @return list of listings that is sorted by their reputation and distance score 
    */
-  public static List<Listing> sortByDistanceAndReputation(List<Listing> listings, String userLocation) 
-      throws IOException {
-
-    DistanceMatrixOBJ distances =  ExcludeByRadius.convertJsonToDMObject(
-        ExcludeByRadius.distanceMatrixJsonURL(userLocation, listings));
+  public static List<Listing> sortByDistanceAndReputation(List<Listing> listings, 
+      ListingDistances distances) throws IOException {
 
-    int[] distanceValues = distances.getIntegerDistanceValues();
+    double[] distanceValues = distances.getRankingDistancesInMeters(listings);
 
     for (int i = 0; i < listings.size(); i++) {
-      listings.get(i).generateReputationScore();
-      listings.get(i).generateDistanceScore(distanceValues[i]);
-      listings.get(i).generateReputationAndDistanceScore();
+      Listing listing = listings.get(i);
+      // A listing that could not be found ranks as if it were far away
+      if (Double.isNaN(distanceValues[i])) {
+        listing.generateDistanceScore(Integer.MAX_VALUE);
+      } else {
+        listing.generateDistanceScore((int) distanceValues[i]);
+      }
+      listing.generateReputationAndDistanceScore();
     }
 
-    // Sorts listings in descending order based of their reputation and distance score
-    Collections.sort(listings,
-      (a, b) -> (-1 * a.reputationAndDistanceScore.compareTo(b.reputationAndDistanceScore))); 
+    // Sorts listings in descending order based of their reputation and 
+    //     distance score
+    Collections.sort(listings, new Comparator<Listing>() {
+      @Override
+      public int compare(Listing a, Listing b) {
+        return Integer.compare(b.getReputationAndDistanceScore(), 
+            a.getReputationAndDistanceScore());
+      }
+    });
     return listings;
   }
   
@@ -100,8 +108,12 @@ public final class RecommendedSort {
    * @return List of listings sorted by the time they were created.
    */
   public static List<Listing> sortByTime(List<Listing> listings) {
-    Collections.sort(listings,
-      (a, b) -> (-1 * a.timestamp.compareTo(b.timestamp)));
+    Collections.sort(listings, new Comparator<Listing>() {
+      @Override
+      public int compare(Listing a, Listing b) {
+        return Long.compare(b.getTimestamp(), a.getTimestamp());
+      }
+    });
 
     return listings;
   }
@@ -16,10 +16,11 @@ package com.google.sps.sort.recommended;
 
 import com.google.appengine.api.datastore.DatastoreService;
 import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
 import com.google.sps.comparator.RecommendedComparator;
 import com.google.sps.data.Listing;
-import com.google.sps.data.User;
-import com.google.sps.utility.EntityUtility;
+import com.google.sps.data.Vote;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
@@ -40,14 +41,13 @@ public final class SortByUpvotedListings {
    */
   public static List<Listing> sortByUpvotedListings(DatastoreService datastore,
       List<Listing> listings, Entity entity) throws Exception {
-    HashSet<String> userUpvotedListingKeyStrings = new HashSet<String>();
-    EntityUtility.addEntityKeyStrings(datastore, User.DELIMITER,
-          entity, userUpvotedListingKeyStrings, "upvotedListingKeys");
+    HashSet<String> userUpvotedListingKeyStrings = getUpvotedListingKeyStrings(
+        datastore, entity.getKey());
     
     // Since this HashSet will not be used by multiple threads, there is no 
     //     need to make it synchronized.
     // Similar users are users the current user shares an upvoted listing with
-    HashSet<Entity> similarUsers = new HashSet<Entity>();
+    HashSet<Key> similarUsers = new HashSet<Key>();
     accumulateSimilarUsers(datastore, entity, similarUsers, 
         userUpvotedListingKeyStrings);
 
@@ -70,33 +70,26 @@ public final class SortByUpvotedListings {
   /**
    * Accumulate all of the similar users or users that share an upvoted listing 
    *     with the current user.
-   * Modifies the similarUsers param which will contain similar users (this 
-   *     does not include the current user) and avoids repetition.
+   * Modifies the similarUsers param which will contain the keys of similar 
+   *     users (this does not include the current user) and avoids repetition.
    * 
    * @param datastore The datastore that stores user/listing data.
    * @param entity The current user's Entity.
-   * @param similarUsers The HashSet that will accumulate similar users.
+   * @param similarUsers The HashSet that will accumulate similar users' keys.
    * @param userUpvotedListingKeyStrings A HashSet containing the current 
    *     user's upvoted listing Key Strings.
    */
   private static void accumulateSimilarUsers(DatastoreService datastore, 
-      Entity entity, HashSet<Entity> similarUsers, 
-      HashSet<String> userUpvotedListingKeyStrings) throws Exception {
+      Entity entity, HashSet<Key> similarUsers, 
+      HashSet<String> userUpvotedListingKeyStrings) {
     // Similar users are users the current user shares an upvoted listing with
-    Iterator<String> upvotedListingKeyStringsIterator = 
-        userUpvotedListingKeyStrings.iterator();
-    while (upvotedListingKeyStringsIterator.hasNext()) {
-      String entityKeyString = upvotedListingKeyStringsIterator.next();
-      Entity upvotedListingEntity = EntityUtility.getEntityFromKey(datastore, 
-          entityKeyString);
-
-      // Add user to the HashSet and prevent any duplicates
-      EntityUtility.addEntities(datastore, User.DELIMITER, upvotedListingEntity,
-          similarUsers, "upvotedUserKeys");
+    for (String listingKeyString : userUpvotedListingKeyStrings) {
+      similarUsers.addAll(Vote.getUpvotedUserKeys(datastore, 
+          KeyFactory.stringToKey(listingKeyString)));
     }
 
     // Removes current user from this HashSet
-    similarUsers.remove(entity);
+    similarUsers.remove(entity.getKey());
   }
 
   /**
@@ -104,23 +97,17 @@ public final class SortByUpvotedListings {
    *     aka the similarUsersUpvotedListingKeyStrings param
    *
    * @param datastore The datastore that stores user/listing data.
-   * @param similarUsers The HashSet that contains users that share an upvoted 
-   *     listing with the current user.
+   * @param similarUsers The HashSet that contains the keys of users that 
+   *     share an upvoted listing with the current user.
    * @param similarUsersUpvotedListingKeyStrings The List containing similar 
    *     users' upvoted listing Key Strings.
    */
   private static void getSimilarUsersUpvotedListings(DatastoreService datastore,
-      HashSet<Entity> similarUsers, 
-      List<HashSet<String>> similarUsersUpvotedListingKeyStrings) 
-      throws Exception {
-    Iterator<Entity> similarUsersIterator = similarUsers.iterator();
-    while (similarUsersIterator.hasNext()) {
-      Entity similarUserEntity = similarUsersIterator.next();
-
-      HashSet<String> upvotedListingKeyStrings = new HashSet<String>();
-      // Adds the key strings of non-mutual upvoted listings
-      EntityUtility.addEntityKeyStrings(datastore, User.DELIMITER,  
-          similarUserEntity, upvotedListingKeyStrings, "upvotedListingKeys");
+      HashSet<Key> similarUsers, 
+      List<HashSet<String>> similarUsersUpvotedListingKeyStrings) {
+    for (Key similarUserKey : similarUsers) {
+      HashSet<String> upvotedListingKeyStrings = getUpvotedListingKeyStrings(
+          datastore, similarUserKey);
           
       if (upvotedListingKeyStrings.size() > 0) {
         similarUsersUpvotedListingKeyStrings.add(upvotedListingKeyStrings);
@@ -128,6 +115,23 @@ public final class SortByUpvotedListings {
     }
   }
 
+  /**
+   * Returns the key Strings of the listings a user upvoted.
+   *
+   * @param datastore The datastore that stores user/listing data.
+   * @param userKey The key of the user's Entity.
+   * @return a HashSet of the upvoted listing Key Strings.
+   */
+  private static HashSet<String> getUpvotedListingKeyStrings(
+      DatastoreService datastore, Key userKey) {
+    HashSet<String> upvotedListingKeyStrings = new HashSet<String>();
+    for (Key listingKey : Vote.getUpvotedListingKeys(datastore, userKey)) {
+      upvotedListingKeyStrings.add(KeyFactory.keyToString(listingKey));
+    }
+
+    return upvotedListingKeyStrings;
+  }
+
   /**
    * Create the recommended Listings from similarUsersUpvotedListingKeyStrings 
    *     param and remove these Listings from the listings param. 
@@ -0,0 +1,129 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.utility;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Measures distances with a primary DistanceProvider until it fails or is 
+ *     too slow several times in a row, then uses a fallback DistanceProvider 
+ *     for a while before trying the primary again.
+ * Shared between requests, so that once the primary is down each request 
+ *     does not have to wait for it.
+ */
+public final class CircuitBreakerDistanceProvider implements DistanceProvider {
+
+  private static final Logger logger = 
+      Logger.getLogger(CircuitBreakerDistanceProvider.class.getName());
+
+  private final DistanceProvider primary;
+  private final DistanceProvider fallback;
+  // A call to the primary that takes longer than this counts as a failure
+  private final long maxLatencyMillis;
+  // The number of failures in a row that open the circuit
+  private final int failureThreshold;
+  // How long the fallback is used once the circuit is open
+  private final long openMillis;
+
+  private int consecutiveFailures = 0;
+  // The time the primary is tried again, or 0 if the circuit is closed
+  private long openUntilMillis = 0;
+
+  public CircuitBreakerDistanceProvider(DistanceProvider primary, 
+      DistanceProvider fallback, long maxLatencyMillis, int failureThreshold, 
+      long openMillis) {
+    this.primary = primary;
+    this.fallback = fallback;
+    this.maxLatencyMillis = maxLatencyMillis;
+    this.failureThreshold = failureThreshold;
+    this.openMillis = openMillis;
+  }
+
+  /**
+   * Returns the distance from an origin to each destination, measured by the 
+   *     fallback if the circuit is open or the primary fails.
+   *
+   * @param origin the location to measure from.
+   * @param destinations the locations to measure to.
+   * @return the distance to each destination in meters, in the same order as 
+   *     the destinations, or Double.NaN if a destination could not be found.
+   */
+  @Override
+  public double[] getDistancesInMeters(String origin, 
+      List<String> destinations) throws IOException {
+    if (isOpen()) {
+      return fallback.getDistancesInMeters(origin, destinations);
+    }
+
+    long startMillis = System.currentTimeMillis();
+    double[] distances;
+    try {
+      distances = primary.getDistancesInMeters(origin, destinations);
+    } catch (IOException e) {
+      recordFailure(e.getMessage());
+      return fallback.getDistancesInMeters(origin, destinations);
+    } catch (RuntimeException e) {
+      // URLFetch deadlines and quotas, and Distance Matrix responses that are 
+      //     not valid JSON, fail with unchecked exceptions
+      recordFailure(e.toString());
+      return fallback.getDistancesInMeters(origin, destinations);
+    }
+
+    long latencyMillis = System.currentTimeMillis() - startMillis;
+    if (latencyMillis > maxLatencyMillis) {
+      // The distances are still used, but the next call may not wait as long
+      recordFailure("took " + latencyMillis + " ms");
+    } else {
+      recordSuccess();
+    }
+
+    return distances;
+  }
+
+  /**
+   * Returns true if the fallback should be used. Once the circuit has been 
+   *     open for openMillis, the next call tries the primary again.
+   *
+   * @return a boolean that states whether the circuit is open.
+   */
+  private synchronized boolean isOpen() {
+    return System.currentTimeMillis() < openUntilMillis;
+  }
+
+  /**
+   * Counts a failure of the primary and opens the circuit if there have been 
+   *     failureThreshold failures in a row. The count is only reset by a 
+   *     success, so a primary that is still down when it is tried again 
+   *     opens the circuit again after one failure.
+   *
+   * @param reason why the call to the primary failed.
+   */
+  private synchronized void recordFailure(String reason) {
+    consecutiveFailures++;
+    if (consecutiveFailures >= failureThreshold) {
+      openUntilMillis = System.currentTimeMillis() + openMillis;
+      logger.warning("Distance provider failed (" + reason 
+          + "), using the fallback for " + openMillis + " ms");
+    }
+  }
+
+  /** Closes the circuit after a call to the primary succeeds. */
+  private synchronized void recordSuccess() {
+    consecutiveFailures = 0;
+    openUntilMillis = 0;
+  }
+}
@@ -18,17 +18,13 @@ import com.google.appengine.api.datastore.DatastoreService;
 import com.google.appengine.api.datastore.Entity;
 import com.google.appengine.api.datastore.Key;
 import com.google.appengine.api.datastore.KeyFactory;
-import com.google.appengine.api.datastore.PreparedQuery;
-import com.google.appengine.api.datastore.Query;
-import com.google.appengine.api.datastore.Query.Filter;
-import com.google.sps.data.User;
+import com.google.sps.data.Vote;
 import com.google.sps.utility.ValidateInput;
 import java.util.List;
 
 public final class DeleteListingUtility {
   /**
-   * Deletes a Listing, and removes its key String from any user's
-   *     upvotedListingKey property that upvoted this listing.
+   * Deletes a Listing and every user's vote on it.
    *
    * @param datastore the DatastoreService that connects to 
    *     the database.
@@ -41,8 +37,7 @@ public final class DeleteListingUtility {
   }
 
   /**
-   * Deletes a Listing, and removes its key String from any user's
-   *     upvotedListingKey property that upvoted this listing.
+   * Deletes a Listing and every user's vote on it.
    *
    * @param datastore the DatastoreService that connects to 
    *     the database.
@@ -55,8 +50,7 @@ public final class DeleteListingUtility {
   }
 
   /**
-   * Deletes a Listing, and removes its key String from any user's
-   *     upvotedListingKey property that upvoted this listing.
+   * Deletes a Listing and every user's vote on it.
    *
    * @param datastore the DatastoreService that connects to 
    *     the database.
@@ -69,8 +63,7 @@ public final class DeleteListingUtility {
   }
 
   /**
-   * Deletes a Listing, and removes its key String from any user's
-   *     upvotedListingKey property that upvoted this listing.
+   * Deletes a Listing and every user's vote on it.
    *
    * @param datastore the DatastoreService that connects to 
    *     the database.
@@ -79,41 +72,12 @@ public final class DeleteListingUtility {
    */
   public static void deleteListing(DatastoreService datastore, Key listingKey,
       String listingKeyString) throws Exception {
-    // Get all users 
-    Query queryUser = new Query("User");
-    PreparedQuery preparedQueryUsers = datastore.prepare(queryUser);
-    Iterable<Entity> userEntitiesIterable = preparedQueryUsers.asIterable();
-
-    removeUpvotedListingFromUsers(datastore, listingKeyString,
-        userEntitiesIterable);
+    Vote.deleteVotesOnListing(datastore, listingKey);
 
+    // The listing's keywords are indexed on the listing Entity itself, so 
+    //     deleting it also removes it from keyword searches.
     datastore.delete(listingKey);
-  }
-
-  /**
-   * Removes a Listing's key String from any user's upvotedListingKey property
-   *     that upvoted this listing.
-   *
-   * @param datastore the DatastoreService that connects to 
-   *     the database.
-   * @param listingKeyString the key String of the Listing to delete.
-   * @param userEntitiesIterable an Iterable containing user Entities.
-   */
-  public static void removeUpvotedListingFromUsers(DatastoreService datastore,
-      String listingKeyString, Iterable<Entity> userEntitiesIterable) {
-    // Go through all of the users and remove the upvoted listing key string
-    //     if they upvoted the listing.
-    for (Entity userEntity : userEntitiesIterable) {
-      String upvotedListingsProperty = "upvotedListingKeys";
-      String upvotedListingKeys = (String) userEntity.getProperty(
-          upvotedListingsProperty);
-
-      if (upvotedListingKeys.contains(listingKeyString)) {
-        upvotedListingKeys = upvotedListingKeys.replaceFirst(
-            listingKeyString + " ", "");
-        userEntity.setProperty(upvotedListingsProperty, upvotedListingKeys);
-        datastore.put(userEntity);
-      }
-    }
+    VoteCounter.delete(datastore, listingKey);
+    ListingSpatialIndex.remove(listingKeyString);
   }
 }
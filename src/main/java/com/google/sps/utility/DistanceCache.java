@@ -0,0 +1,154 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.utility;
+
+import com.google.appengine.api.memcache.Expiration;
+import com.google.appengine.api.memcache.MemcacheService;
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Caches the distances returned by another DistanceProvider by origin and 
+ *     destination, first in this instance and then in memcache so that 
+ *     every instance shares them. Only the distances that are in neither 
+ *     cache are requested from the provider.
+ */
+public final class DistanceCache implements DistanceProvider {
+
+  // How long a distance stays in the caches
+  private static final int TIME_TO_LIVE_SECONDS = 7 * 24 * 60 * 60;
+  // The maximum number of distances this instance holds
+  private static final int MAX_LOCAL_ENTRIES = 10000;
+
+  private static final String KEY_PREFIX = "distance:";
+
+  private final TtlLruCache<String, Double> localCache = 
+      new TtlLruCache<String, Double>(MAX_LOCAL_ENTRIES, 
+          TIME_TO_LIVE_SECONDS * 1000L);
+  private final MemcacheService memcache;
+  private final DistanceProvider provider;
+
+  public DistanceCache(MemcacheService memcache, DistanceProvider provider) {
+    this.memcache = memcache;
+    this.provider = provider;
+  }
+
+  public DistanceCache(DistanceProvider provider) {
+    this(MemcacheServiceFactory.getMemcacheService(), provider);
+  }
+
+  /**
+   * Returns the distance from an origin to each destination.
+   *
+   * @param origin the location to measure from.
+   * @param destinations the locations to measure to.
+   * @return the distance to each destination in meters, in the same order as 
+   *     the destinations, or Double.NaN if a destination could not be found.
+   */
+  @Override
+  public double[] getDistancesInMeters(String origin, 
+      List<String> destinations) throws IOException {
+    double[] distances = new double[destinations.size()];
+
+    // The indices of the destinations that are not in this instance's cache, 
+    //     by cache key
+    LinkedHashMap<String, List<Integer>> localMisses = 
+        new LinkedHashMap<String, List<Integer>>();
+    for (int i = 0; i < destinations.size(); i++) {
+      String key = createKey(origin, destinations.get(i));
+      Double distance = localCache.get(key);
+      if (distance != null) {
+        distances[i] = distance;
+      } else {
+        if (!localMisses.containsKey(key)) {
+          localMisses.put(key, new ArrayList<Integer>());
+        }
+        localMisses.get(key).add(i);
+      }
+    }
+
+    if (localMisses.isEmpty()) {
+      return distances;
+    }
+
+    Map<String, Object> memcacheHits = memcache.getAll(localMisses.keySet());
+    List<String> misses = new ArrayList<String>();
+    List<String> missedDestinations = new ArrayList<String>();
+    for (Map.Entry<String, List<Integer>> localMiss : localMisses.entrySet()) {
+      Object distance = memcacheHits.get(localMiss.getKey());
+      if (distance instanceof Double) {
+        localCache.put(localMiss.getKey(), (Double) distance);
+        setDistances(distances, localMiss.getValue(), (Double) distance);
+      } else {
+        misses.add(localMiss.getKey());
+        missedDestinations.add(destinations.get(localMiss.getValue().get(0)));
+      }
+    }
+
+    if (misses.isEmpty()) {
+      return distances;
+    }
+
+    double[] missedDistances = provider.getDistancesInMeters(origin, 
+        missedDestinations);
+    Map<String, Double> newDistances = new HashMap<String, Double>();
+    for (int i = 0; i < misses.size(); i++) {
+      String key = misses.get(i);
+      setDistances(distances, localMisses.get(key), missedDistances[i]);
+
+      // Locations that could not be found are asked for again next time
+      if (!Double.isNaN(missedDistances[i])) {
+        localCache.put(key, missedDistances[i]);
+        newDistances.put(key, missedDistances[i]);
+      }
+    }
+    memcache.putAll(newDistances, 
+        Expiration.byDeltaSeconds(TIME_TO_LIVE_SECONDS));
+
+    return distances;
+  }
+
+  /**
+   * Sets the distance of every destination that has the same location.
+   *
+   * @param distances the distance to each destination.
+   * @param indices the indices of the destinations.
+   * @param distance the distance to the location.
+   */
+  private static void setDistances(double[] distances, List<Integer> indices, 
+      double distance) {
+    for (int index : indices) {
+      distances[index] = distance;
+    }
+  }
+
+  /**
+   * Creates the cache key of an origin and a destination. Locations that 
+   *     only differ in case or spacing share a key.
+   *
+   * @param origin the location to measure from.
+   * @param destination the location to measure to.
+   * @return the cache key.
+   */
+  private static String createKey(String origin, String destination) {
+    return KEY_PREFIX + GeoUtility.normalizeLocation(origin) + "|" 
+        + GeoUtility.normalizeLocation(destination);
+  }
+}
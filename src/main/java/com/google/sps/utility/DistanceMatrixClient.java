@@ -0,0 +1,344 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.utility;
+
+import com.google.appengine.api.urlfetch.FetchOptions;
+import com.google.appengine.api.urlfetch.HTTPMethod;
+import com.google.appengine.api.urlfetch.HTTPRequest;
+import com.google.appengine.api.urlfetch.HTTPResponse;
+import com.google.appengine.api.urlfetch.URLFetchService;
+import com.google.appengine.api.urlfetch.URLFetchServiceFactory;
+import com.google.gson.stream.JsonReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Client for the Distance Matrix API that measures the distance from one 
+ *     origin to many destinations.
+ * Destinations are split into batches of at most MAX_DESTINATIONS that are 
+ *     requested at the same time with the URL Fetch service, which reuses 
+ *     connections between requests, and each request has a deadline.
+ */
+public final class DistanceMatrixClient implements DistanceProvider {
+
+  public static final String DEFAULT_BASE_URL = 
+      "https://maps.googleapis.com/maps/api/distancematrix/json";
+
+  // The maximum number of destinations the API accepts in one request
+  public static final int MAX_DESTINATIONS = 25;
+
+  // How long to wait for a response in seconds
+  private static final double DEADLINE = 5;
+
+  private final URLFetchService urlFetchService;
+  private final String baseURL;
+  private final String apiKey;
+
+  public DistanceMatrixClient() {
+    this(URLFetchServiceFactory.getURLFetchService(), DEFAULT_BASE_URL, 
+        secret.API_KEY);
+  }
+
+  /**
+   * Creates a client that sends requests to another server, like a local 
+   *     stub of the Distance Matrix API.
+   *
+   * @param urlFetchService the service used to send requests.
+   * @param baseURL the URL of the Distance Matrix JSON endpoint.
+   * @param apiKey the API key sent with every request.
+   */
+  public DistanceMatrixClient(URLFetchService urlFetchService, String baseURL, 
+      String apiKey) {
+    this.urlFetchService = urlFetchService;
+    this.baseURL = baseURL;
+    this.apiKey = apiKey;
+  }
+
+  /**
+   * Returns the distance from an origin to each destination.
+   *
+   * @param origin the location to measure from.
+   * @param destinations the locations to measure to.
+   * @return the distance to each destination in meters, in the same order as 
+   *     the destinations, or Double.NaN if a destination could not be found.
+   */
+  @Override
+  public double[] getDistancesInMeters(String origin, 
+      List<String> destinations) throws IOException {
+    return fetchValues(origin, destinations, false);
+  }
+
+  /**
+   * Returns the time it takes to drive from an origin to each destination if 
+   *     leaving now, in the current traffic.
+   *
+   * @param origin the location to drive from.
+   * @param destinations the locations to drive to.
+   * @return the travel time to each destination in seconds, in the same order 
+   *     as the destinations, or Double.NaN if a destination could not be 
+   *     found.
+   */
+  public double[] getTravelTimesInSeconds(String origin, 
+      List<String> destinations) throws IOException {
+    return fetchValues(origin, destinations, true);
+  }
+
+  /**
+   * Returns the distance or travel time from an origin to each destination.
+   *
+   * @param origin the location to measure from.
+   * @param destinations the locations to measure to.
+   * @param isTravelTime true to return travel times in seconds, false to 
+   *     return distances in meters.
+   * @return the value for each destination, in the same order as the 
+   *     destinations, or Double.NaN if a destination could not be found.
+   */
+  private double[] fetchValues(String origin, List<String> destinations, 
+      boolean isTravelTime) throws IOException {
+    double[] values = new double[destinations.size()];
+    Arrays.fill(values, Double.NaN);
+
+    // Send every batch before waiting for any of them
+    List<Future<HTTPResponse>> responses = new ArrayList<Future<HTTPResponse>>();
+    for (int start = 0; start < destinations.size(); 
+        start += MAX_DESTINATIONS) {
+      int end = Math.min(start + MAX_DESTINATIONS, destinations.size());
+      responses.add(urlFetchService.fetchAsync(createRequest(origin, 
+          destinations.subList(start, end), isTravelTime)));
+    }
+
+    for (int i = 0; i < responses.size(); i++) {
+      HTTPResponse response;
+      try {
+        response = responses.get(i).get();
+      } catch (InterruptedException | ExecutionException e) {
+        throw new IOException("Distance Matrix request failed: " 
+            + e.getMessage(), e);
+      }
+
+      if (response.getResponseCode() != 200) {
+        throw new IOException("HttpResponseCode: " 
+            + response.getResponseCode());
+      }
+      parseValues(response.getContent(), values, i * MAX_DESTINATIONS, 
+          isTravelTime);
+    }
+
+    return values;
+  }
+
+  /**
+   * Creates the request for a batch of destinations.
+   *
+   * @param origin the location to measure from.
+   * @param destinations at most MAX_DESTINATIONS locations to measure to.
+   * @param isTravelTime true to ask for travel times in the current traffic.
+   * @return the request for the batch.
+   */
+  private HTTPRequest createRequest(String origin, List<String> destinations, 
+      boolean isTravelTime) throws IOException {
+    StringBuilder url = new StringBuilder(baseURL);
+    url.append("?origins=").append(encode(origin));
+    url.append("&destinations=");
+    for (int i = 0; i < destinations.size(); i++) {
+      if (i > 0) {
+        url.append("%7C");
+      }
+      url.append(encode(destinations.get(i)));
+    }
+    if (isTravelTime) {
+      url.append("&departure_time=now");
+    }
+    url.append("&key=").append(encode(apiKey));
+
+    return new HTTPRequest(new URL(url.toString()), HTTPMethod.GET, 
+        FetchOptions.Builder.withDeadline(DEADLINE));
+  }
+
+  /**
+   * Reads the distances out of a Distance Matrix response one token at a 
+   *     time, without creating an object for each element.
+   *
+   * @param content the body of the response.
+   * @param distances the array to store the distances in.
+   * @param offset the index in distances of the first destination of the 
+   *     batch.
+   */
+  static void parseDistances(byte[] content, double[] distances, int offset) 
+      throws IOException {
+    parseValues(content, distances, offset, false);
+  }
+
+  /**
+   * Reads the distances or travel times out of a Distance Matrix response.
+   *
+   * @param content the body of the response.
+   * @param values the array to store the values in.
+   * @param offset the index in values of the first destination of the batch.
+   * @param isTravelTime true to read travel times in seconds, false to read 
+   *     distances in meters.
+   */
+  private static void parseValues(byte[] content, double[] values, int offset, 
+      boolean isTravelTime) throws IOException {
+    try (JsonReader reader = new JsonReader(new InputStreamReader(
+        new ByteArrayInputStream(content), StandardCharsets.UTF_8))) {
+      String status = "";
+      reader.beginObject();
+      while (reader.hasNext()) {
+        String name = reader.nextName();
+        if (name.equals("status")) {
+          status = reader.nextString();
+        } else if (name.equals("rows")) {
+          reader.beginArray();
+          // There is only one origin, so only the first row has distances
+          if (reader.hasNext()) {
+            parseRow(reader, values, offset, isTravelTime);
+          }
+          while (reader.hasNext()) {
+            reader.skipValue();
+          }
+          reader.endArray();
+        } else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+
+      if (!status.equals("OK")) {
+        throw new IOException("Distance Matrix status: " + status);
+      }
+    }
+  }
+
+  /**
+   * Reads the value of each element of a row.
+   *
+   * @param reader the reader positioned at the start of the row.
+   * @param values the array to store the values in.
+   * @param offset the index in values of the first element of the row.
+   * @param isTravelTime true to read travel times, false to read distances.
+   */
+  private static void parseRow(JsonReader reader, double[] values, 
+      int offset, boolean isTravelTime) throws IOException {
+    reader.beginObject();
+    while (reader.hasNext()) {
+      if (!reader.nextName().equals("elements")) {
+        reader.skipValue();
+        continue;
+      }
+
+      reader.beginArray();
+      int index = offset;
+      while (reader.hasNext()) {
+        double value = parseElement(reader, isTravelTime);
+        if (index < values.length) {
+          values[index] = value;
+        }
+        index++;
+      }
+      reader.endArray();
+    }
+    reader.endObject();
+  }
+
+  /**
+   * Reads the distance or travel time of an element. The travel time in 
+   *     traffic is only returned for driving with a departure time, so the 
+   *     travel time without traffic is used when it is missing.
+   *
+   * @param reader the reader positioned at the start of the element.
+   * @param isTravelTime true to read the travel time, false to read the 
+   *     distance.
+   * @return the distance in meters, the travel time in seconds, or 
+   *     Double.NaN if the element has none.
+   */
+  private static double parseElement(JsonReader reader, boolean isTravelTime) 
+      throws IOException {
+    double distance = Double.NaN;
+    double duration = Double.NaN;
+    double durationInTraffic = Double.NaN;
+    String status = "";
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if (name.equals("status")) {
+        status = reader.nextString();
+      } else if (name.equals("distance")) {
+        distance = parseValue(reader);
+      } else if (name.equals("duration")) {
+        duration = parseValue(reader);
+      } else if (name.equals("duration_in_traffic")) {
+        durationInTraffic = parseValue(reader);
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+
+    if (!status.equals("OK")) {
+      return Double.NaN;
+    }
+
+    if (!isTravelTime) {
+      return distance;
+    }
+
+    if (Double.isNaN(durationInTraffic)) {
+      return duration;
+    }
+
+    return durationInTraffic;
+  }
+
+  /**
+   * Reads the value of a distance or duration object.
+   *
+   * @param reader the reader positioned at the start of the object.
+   * @return the value or Double.NaN if the object has none.
+   */
+  private static double parseValue(JsonReader reader) throws IOException {
+    double value = Double.NaN;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      if (reader.nextName().equals("value")) {
+        value = reader.nextDouble();
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+
+    return value;
+  }
+
+  /**
+   * Encodes a value for a URL query.
+   *
+   * @param value the value to encode.
+   * @return the encoded value.
+   */
+  private static String encode(String value) throws IOException {
+    return URLEncoder.encode(value, "UTF-8");
+  }
+}
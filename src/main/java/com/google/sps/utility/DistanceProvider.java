@@ -0,0 +1,33 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.utility;
+
+import java.io.IOException;
+import java.util.List;
+
+/** Measures the distance from one location to many locations. */
+public interface DistanceProvider {
+
+  /**
+   * Returns the distance from an origin to each destination.
+   *
+   * @param origin the location to measure from.
+   * @param destinations the locations to measure to.
+   * @return the distance to each destination in meters, in the same order as 
+   *     the destinations, or Double.NaN if a destination could not be found.
+   */
+  public double[] getDistancesInMeters(String origin, 
+      List<String> destinations) throws IOException;
+}
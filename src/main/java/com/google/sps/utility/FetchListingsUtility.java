@@ -0,0 +1,261 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.utility;
+
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.sps.data.Listing;
+import com.google.sps.data.ViewerContext;
+import com.google.sps.filter.ListingFilter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+public final class FetchListingsUtility {
+
+  // Separates the cursors of each stream in the cursor String of a page
+  private static final String CURSOR_SEPARATOR = "~";
+
+  /**
+   * Fills a page of Listings by merging the streams of listing Entities in 
+   *     query order and passing them through the filters in batches.
+   * Stops as soon as the page is full, the streams have no more results, or 
+   *     SCAN_LIMIT listing Entities have been looked at.
+   *
+   * @param streams the streams of listing Entities, each opened at the 
+   *     cursor returned by splitCursorString.
+   * @param pageSize the maximum number of Listings in the page.
+   * @param viewer the user viewing these listings.
+   * @param filters the filters a Listing must pass to be in the page.
+   * @param page the List that the Listings of the page are added to.
+   * @return the cursor String that points to the listings after this page 
+   *     and after the listings the filters dropped, or "" if there are no 
+   *     more listings.
+   */
+  public static String fetchPage(List<ListingStream> streams, int pageSize, 
+      ViewerContext viewer, List<ListingFilter> filters, List<Listing> page) 
+      throws Exception {
+    // The position of every stream right after the last listing looked at
+    Cursor[] nextPositions = null;
+    int scanned = 0;
+    while (page.size() < pageSize && scanned < ListingConstants.SCAN_LIMIT) {
+      // Remember where the streams are after each listing, so the next page 
+      //     can start right after the last listing this page used up.
+      HashMap<Listing, Cursor[]> listingPositions = 
+          new HashMap<Listing, Cursor[]>();
+      List<Listing> batch = new ArrayList<Listing>();
+      int batchSize = Math.min(pageSize, ListingConstants.SCAN_LIMIT - scanned);
+      while (batch.size() < batchSize) {
+        Listing listing = nextListing(streams, viewer);
+        if (listing == null) {
+          break;
+        }
+        nextPositions = getPositions(streams);
+        listingPositions.put(listing, nextPositions);
+        batch.add(listing);
+      }
+      if (batch.isEmpty()) {
+        break;
+      }
+      scanned += batch.size();
+
+      List<Listing> filteredBatch = batch;
+      for (ListingFilter filter : filters) {
+        if (filteredBatch.isEmpty()) {
+          break;
+        }
+        filteredBatch = filter.filter(filteredBatch);
+      }
+
+      // The next page starts right after the last listing that was either 
+      //     added to this page or dropped by the filters, so that it does 
+      //     not look at the dropped listings again. It stops before the 
+      //     first listing that passed the filters but did not fit.
+      HashSet<Listing> passedListings = new HashSet<Listing>(filteredBatch);
+      for (Listing listing : batch) {
+        if (passedListings.contains(listing)) {
+          if (page.size() == pageSize) {
+            break;
+          }
+          page.add(listing);
+        }
+        nextPositions = listingPositions.get(listing);
+      }
+    }
+
+    boolean pageEndsEarly = page.size() == pageSize 
+        || scanned == ListingConstants.SCAN_LIMIT;
+    if (nextPositions == null || (!pageEndsEarly && isExhausted(streams))) {
+      return "";
+    }
+
+    for (ListingStream stream : streams) {
+      if (!stream.isCursorSupported()) {
+        return "";
+      }
+    }
+
+    return joinCursorString(nextPositions);
+  }
+
+  /**
+   * Splits the cursor String of a page into the cursor Strings of each 
+   *     stream.
+   *
+   * @param cursorString the cursor String returned by fetchPage, or "" to 
+   *     start at the first listing.
+   * @param numStreams the number of streams the page is fetched from.
+   * @return the cursor String of each stream.
+   */
+  public static String[] splitCursorString(String cursorString, 
+      int numStreams) throws Exception {
+    if (cursorString.length() == 0) {
+      String[] cursorStrings = new String[numStreams];
+      Arrays.fill(cursorStrings, "");
+      return cursorStrings;
+    }
+
+    String[] cursorStrings = cursorString.split(CURSOR_SEPARATOR, -1);
+    if (cursorStrings.length != numStreams) {
+      throw new Exception("Invalid cursor: " + cursorString);
+    }
+
+    return cursorStrings;
+  }
+
+  /**
+   * Joins the positions of each stream into the cursor String of a page.
+   *
+   * @param positions the cursor of each stream or null if it is exhausted.
+   * @return the cursor String of the page, or "" if every stream is 
+   *     exhausted.
+   */
+  private static String joinCursorString(Cursor[] positions) {
+    StringBuilder cursorString = new StringBuilder();
+    boolean isExhausted = true;
+    for (int i = 0; i < positions.length; i++) {
+      if (i > 0) {
+        cursorString.append(CURSOR_SEPARATOR);
+      }
+
+      if (positions[i] == null) {
+        cursorString.append(ListingStream.EXHAUSTED_CURSOR);
+      } else {
+        cursorString.append(positions[i].toWebSafeString());
+        isExhausted = false;
+      }
+    }
+
+    if (isExhausted) {
+      return "";
+    }
+
+    return cursorString.toString();
+  }
+
+  /**
+   * Removes the first listing out of the next listings of the streams, so 
+   *     that the merged streams are in the same order as a single query.
+   * The same listing at the head of other streams, like a listing that 
+   *     matches the keywords of two streams, is skipped, so that it is only 
+   *     returned once.
+   *
+   * @param streams the streams of listing Entities.
+   * @param viewer the user viewing these listings.
+   * @return the next Listing or null if there are no more.
+   */
+  private static Listing nextListing(List<ListingStream> streams, 
+      ViewerContext viewer) {
+    ListingStream nextStream = null;
+    for (ListingStream stream : streams) {
+      if (stream.peekKey() != null 
+          && (nextStream == null || stream.ranksBefore(nextStream))) {
+        nextStream = stream;
+      }
+    }
+
+    if (nextStream == null) {
+      return null;
+    }
+
+    // The streams are in the same order, so a listing in more than one 
+    //     stream is at the head of each of them at the same time
+    Key key = nextStream.peekKey();
+    for (ListingStream stream : streams) {
+      if (stream != nextStream && key.equals(stream.peekKey())) {
+        stream.skip();
+      }
+    }
+
+    return nextStream.next(viewer);
+  }
+
+  /**
+   * Returns the position of every stream.
+   *
+   * @param streams the streams of listing Entities.
+   * @return the cursor of each stream or null if it is exhausted.
+   */
+  private static Cursor[] getPositions(List<ListingStream> streams) {
+    Cursor[] positions = new Cursor[streams.size()];
+    for (int i = 0; i < positions.length; i++) {
+      positions[i] = streams.get(i).getPosition();
+    }
+
+    return positions;
+  }
+
+  /**
+   * Returns true if every stream is exhausted.
+   *
+   * @param streams the streams of listing Entities.
+   * @return a boolean that states whether there are no more listings.
+   */
+  private static boolean isExhausted(List<ListingStream> streams) {
+    for (ListingStream stream : streams) {
+      if (!stream.isExhausted()) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Creates the FetchOptions used to stream listing Entities in batches.
+   *
+   * @param pageSize the maximum number of Listings in a page.
+   * @param cursorString the web safe String of the cursor to start at, or "" 
+   *     to start at the first listing.
+   * @return FetchOptions that stream listing Entities in batches.
+   */
+  static FetchOptions createFetchOptions(int pageSize, String cursorString) 
+      throws Exception {
+    FetchOptions fetchOptions = FetchOptions.Builder.withChunkSize(pageSize)
+        .prefetchSize(pageSize);
+    if (cursorString.length() > 0) {
+      try {
+        fetchOptions.startCursor(Cursor.fromWebSafeString(cursorString));
+      } catch (IllegalArgumentException e) {
+        throw new Exception("Invalid cursor: " + cursorString);
+      }
+    }
+
+    return fetchOptions;
+  }
+}
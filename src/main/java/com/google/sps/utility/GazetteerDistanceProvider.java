@@ -0,0 +1,178 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.utility;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Measures distances offline between the centroids of places in a 
+ *     gazetteer, a file of city names and zip codes with their coordinates.
+ * Less accurate than the Distance Matrix API, but never slow and never down.
+ * The gazetteer on the classpath only has the largest cities of the US, so 
+ *     most listings cannot be measured offline with it. A full gazetteer, 
+ *     like the US Census gazetteer of places and zip codes in the same 
+ *     format, can be loaded from a file instead (see GeoUtility).
+ */
+public final class GazetteerDistanceProvider implements DistanceProvider {
+
+  // The gazetteer on the classpath
+  public static final String DEFAULT_RESOURCE = "/gazetteer.tsv";
+
+  private static final Pattern ZIP_CODE = Pattern.compile("\\b(\\d{5})\\b");
+
+  // The coordinates of each place, by normalized name or zip code
+  private final HashMap<String, double[]> centroids;
+
+  public GazetteerDistanceProvider(HashMap<String, double[]> centroids) {
+    this.centroids = centroids;
+  }
+
+  /**
+   * Loads a gazetteer from the classpath.
+   *
+   * @param resource the name of the gazetteer resource.
+   * @return a GazetteerDistanceProvider that measures between the places in 
+   *     the gazetteer, which has no places if the resource does not exist.
+   */
+  public static GazetteerDistanceProvider fromResource(String resource) 
+      throws IOException {
+    InputStream inputStream = 
+        GazetteerDistanceProvider.class.getResourceAsStream(resource);
+    if (inputStream == null) {
+      return new GazetteerDistanceProvider(new HashMap<String, double[]>());
+    }
+
+    try {
+      return new GazetteerDistanceProvider(readCentroids(inputStream));
+    } finally {
+      inputStream.close();
+    }
+  }
+
+  /**
+   * Loads a gazetteer from a file.
+   *
+   * @param path the path of the gazetteer file.
+   * @return a GazetteerDistanceProvider that measures between the places in 
+   *     the gazetteer.
+   */
+  public static GazetteerDistanceProvider fromFile(String path) 
+      throws IOException {
+    try (InputStream inputStream = new FileInputStream(path)) {
+      return new GazetteerDistanceProvider(readCentroids(inputStream));
+    }
+  }
+
+  /**
+   * Reads a gazetteer where each line is a place, its latitude, and its 
+   *     longitude separated by tabs. Lines that start with # are skipped.
+   *
+   * @param inputStream the gazetteer.
+   * @return the coordinates of each place by normalized name.
+   */
+  static HashMap<String, double[]> readCentroids(InputStream inputStream) 
+      throws IOException {
+    HashMap<String, double[]> centroids = new HashMap<String, double[]>();
+    BufferedReader reader = new BufferedReader(
+        new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+    String line;
+    while ((line = reader.readLine()) != null) {
+      if (line.trim().isEmpty() || line.startsWith("#")) {
+        continue;
+      }
+
+      String[] fields = line.split("\t");
+      if (fields.length != 3) {
+        throw new IOException("Invalid gazetteer line: " + line);
+      }
+      try {
+        centroids.put(GeoUtility.normalizeLocation(fields[0]), 
+            new double[] {Double.parseDouble(fields[1]), 
+                Double.parseDouble(fields[2])});
+      } catch (NumberFormatException e) {
+        throw new IOException("Invalid gazetteer line: " + line, e);
+      }
+    }
+
+    return centroids;
+  }
+
+  @Override
+  public double[] getDistancesInMeters(String origin, 
+      List<String> destinations) {
+    double[] distances = new double[destinations.size()];
+    double[] originCoordinates = findCoordinates(origin);
+    for (int i = 0; i < destinations.size(); i++) {
+      double[] destinationCoordinates = findCoordinates(destinations.get(i));
+      if (originCoordinates == null || destinationCoordinates == null) {
+        distances[i] = Double.NaN;
+      } else {
+        distances[i] = GeoUtility.distanceInMeters(originCoordinates[0], 
+            originCoordinates[1], destinationCoordinates[0], 
+            destinationCoordinates[1]);
+      }
+    }
+
+    return distances;
+  }
+
+  /**
+   * Finds the coordinates of a location. A location can be a latitude and 
+   *     longitude, contain a zip code, or end with a place in the gazetteer, 
+   *     like "1600 Amphitheatre Pkwy, Mountain View, CA".
+   *
+   * @param location the location to find.
+   * @return an array of the latitude and longitude, or null if the location 
+   *     is not in the gazetteer.
+   */
+  private double[] findCoordinates(String location) {
+    double[] coordinates = GeoUtility.parseCoordinates(location);
+    if (coordinates != null) {
+      return coordinates;
+    }
+
+    Matcher zipCode = ZIP_CODE.matcher(location);
+    if (zipCode.find() && centroids.containsKey(zipCode.group(1))) {
+      return centroids.get(zipCode.group(1));
+    }
+
+    // Drop a zip code and a country, then drop leading parts of the address 
+    //     until the rest is a place in the gazetteer
+    String place = GeoUtility.normalizeLocation(
+        ZIP_CODE.matcher(location).replaceAll(""))
+        .replaceAll(",? ?(usa|united states)$", "");
+    while (true) {
+      place = place.replaceAll("[ ,]+$", "");
+      if (centroids.containsKey(place)) {
+        return centroids.get(place);
+      }
+
+      int commaIndex = place.indexOf(",");
+      if (commaIndex < 0) {
+        return null;
+      }
+      place = place.substring(commaIndex + 1).trim();
+    }
+  }
+}
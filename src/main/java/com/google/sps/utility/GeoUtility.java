@@ -0,0 +1,250 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.utility;
+
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
+import com.google.sps.data.GeocodeOBJ;
+import com.google.sps.data.Listing;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Computes distances between the user and listings from coordinates. */
+public final class GeoUtility {
+
+  // The mean radius of the Earth in meters
+  public static final double EARTH_RADIUS = 6371008.8;
+
+  // Set the system property to "offline" to never call the Distance Matrix 
+  //     API, like in load tests
+  public static final String DISTANCE_PROVIDER_PROPERTY = "distance.provider";
+  // Set the system property to the path of a gazetteer file to measure with 
+  //     it instead of the small gazetteer on the classpath
+  public static final String GAZETTEER_PROPERTY = "distance.gazetteer";
+
+  // When the Distance Matrix API fails or takes longer than 
+  //     MAX_REMOTE_LATENCY ms REMOTE_FAILURE_THRESHOLD times in a row, the 
+  //     gazetteer is used for REMOTE_RETRY_DELAY ms
+  private static final long MAX_REMOTE_LATENCY = 2000;
+  private static final int REMOTE_FAILURE_THRESHOLD = 3;
+  private static final long REMOTE_RETRY_DELAY = 60000;
+
+  private static final DistanceProvider DISTANCE_PROVIDER = 
+      createDistanceProvider();
+
+  // Pairs that are not cached are estimated by DISTANCE_PROVIDER, so a search 
+  //     never waits for the Distance Matrix API outside the circuit breaker
+  private static final TravelTimeCache TRAVEL_TIME_CACHE = new TravelTimeCache(
+      MemcacheServiceFactory.getMemcacheService(), new DistanceMatrixClient(), 
+      DISTANCE_PROVIDER);
+
+  /**
+   * Creates the DistanceProvider that measures distances that cannot be 
+   *     measured from coordinates.
+   *
+   * @return the gazetteer if distances are measured offline, otherwise the 
+   *     cached Distance Matrix API that falls back to the gazetteer.
+   */
+  private static DistanceProvider createDistanceProvider() {
+    GazetteerDistanceProvider gazetteer;
+    String gazetteerPath = System.getProperty(GAZETTEER_PROPERTY);
+    try {
+      if (gazetteerPath != null) {
+        gazetteer = GazetteerDistanceProvider.fromFile(gazetteerPath);
+      } else {
+        gazetteer = GazetteerDistanceProvider.fromResource(
+            GazetteerDistanceProvider.DEFAULT_RESOURCE);
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Could not load gazetteer", e);
+    }
+
+    if ("offline".equals(System.getProperty(DISTANCE_PROVIDER_PROPERTY))) {
+      return gazetteer;
+    }
+
+    // Only new pairs of locations are sent to the Distance Matrix API. 
+    //     Distances from the gazetteer are not cached, so that they are 
+    //     replaced once the API is back.
+    return new CircuitBreakerDistanceProvider(
+        new DistanceCache(new DistanceMatrixClient()), gazetteer, 
+        MAX_REMOTE_LATENCY, REMOTE_FAILURE_THRESHOLD, REMOTE_RETRY_DELAY);
+  }
+
+  /**
+   * Returns the radius filter in meters.
+   *
+   * @param radius the radius filter in kilometers, where RADIUS_MAX means 
+   *     anywhere.
+   * @return the radius in meters, or Double.POSITIVE_INFINITY for anywhere.
+   */
+  public static double radiusInMeters(int radius) {
+    if (radius >= ListingConstants.RADIUS_MAX) {
+      return Double.POSITIVE_INFINITY;
+    }
+
+    return radius * 1000.0;
+  }
+
+  /**
+   * Lower-cases a location and collapses its whitespace, so that locations 
+   *     that only differ in case or spacing are cached and looked up as the 
+   *     same place.
+   *
+   * @param location the location to normalize.
+   * @return the normalized location.
+   */
+  public static String normalizeLocation(String location) {
+    return location.trim().replaceAll("\\s+", " ").toLowerCase();
+  }
+
+  /**
+   * Parses a location that is a latitude and longitude separated by a space 
+   *     or a comma, like the location the browser sends.
+   *
+   * @param location the location to parse.
+   * @return an array of the latitude and longitude, or null if the location 
+   *     is not a pair of coordinates.
+   */
+  public static double[] parseCoordinates(String location) {
+    String[] parts = location.trim().split("[\\s,]+");
+    if (parts.length != 2) {
+      return null;
+    }
+
+    try {
+      double latitude = Double.parseDouble(parts[0]);
+      double longitude = Double.parseDouble(parts[1]);
+      if (Math.abs(latitude) > 90 || Math.abs(longitude) > 180) {
+        return null;
+      }
+
+      return new double[] {latitude, longitude};
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Returns the great-circle distance between two points using the 
+   *     haversine formula.
+   *
+   * @param latitude1 the latitude of the first point in degrees.
+   * @param longitude1 the longitude of the first point in degrees.
+   * @param latitude2 the latitude of the second point in degrees.
+   * @param longitude2 the longitude of the second point in degrees.
+   * @return the distance between the points in meters.
+   */
+  public static double distanceInMeters(double latitude1, double longitude1, 
+      double latitude2, double longitude2) {
+    double latitudeDelta = Math.toRadians(latitude2 - latitude1);
+    double longitudeDelta = Math.toRadians(longitude2 - longitude1);
+    double a = Math.sin(latitudeDelta / 2) * Math.sin(latitudeDelta / 2) 
+        + Math.cos(Math.toRadians(latitude1)) 
+        * Math.cos(Math.toRadians(latitude2)) 
+        * Math.sin(longitudeDelta / 2) * Math.sin(longitudeDelta / 2);
+
+    return 2 * EARTH_RADIUS * Math.asin(Math.min(1, Math.sqrt(a)));
+  }
+
+  /**
+   * Returns the distance between the user and each listing.
+   * Listings with coordinates are measured locally. Only listings without 
+   *     coordinates, or all listings if the user's location could not be 
+   *     found, are measured by the DistanceProvider.
+   *
+   * @param userLocation the location the user entered.
+   * @param origin the GeocodeOBJ of the user's location.
+   * @param listings the listings to measure.
+   * @return the distance to each listing in meters, in the same order as the 
+   *     listings, or Double.NaN if a listing's location could not be found.
+   */
+  public static double[] getDistancesInMeters(String userLocation, 
+      GeocodeOBJ origin, List<Listing> listings) throws IOException {
+    double[] distances = new double[listings.size()];
+    List<Listing> unmeasuredListings = new ArrayList<Listing>();
+    List<Integer> unmeasuredIndices = new ArrayList<Integer>();
+    for (int i = 0; i < listings.size(); i++) {
+      Listing listing = listings.get(i);
+      if (origin != null && origin.isFound() && listing.hasCoordinates()) {
+        distances[i] = distanceInMeters(origin.getLatitude(), 
+            origin.getLongitude(), listing.getLatitude(), 
+            listing.getLongitude());
+      } else {
+        unmeasuredListings.add(listing);
+        unmeasuredIndices.add(i);
+      }
+    }
+
+    if (!unmeasuredListings.isEmpty()) {
+      List<String> destinations = new ArrayList<String>();
+      for (Listing listing : unmeasuredListings) {
+        destinations.add(listing.getLocation());
+      }
+      double[] distanceValues = DISTANCE_PROVIDER.getDistancesInMeters(
+          userLocation, destinations);
+      for (int i = 0; i < distanceValues.length; i++) {
+        distances[unmeasuredIndices.get(i)] = distanceValues[i];
+      }
+    }
+
+    return distances;
+  }
+
+  /**
+   * Returns the time it takes to drive from the user to each listing in 
+   *     traffic at this time of day, from the TravelTimeCache.
+   * Coordinates are used for the user and listings that have them, so that 
+   *     the same places make the same cache keys however they were entered.
+   *
+   * @param userLocation the location the user entered.
+   * @param origin the GeocodeOBJ of the user's location.
+   * @param listings the listings to travel to.
+   * @return the travel time to each listing in seconds, in the same order as 
+   *     the listings, or Double.NaN if a listing's location could not be 
+   *     found.
+   */
+  public static double[] getTravelTimesInSeconds(String userLocation, 
+      GeocodeOBJ origin, List<Listing> listings) throws IOException {
+    String originLocation = userLocation;
+    if (origin != null && origin.isFound()) {
+      originLocation = origin.getLatitude() + "," + origin.getLongitude();
+    }
+
+    List<String> destinations = new ArrayList<String>();
+    for (Listing listing : listings) {
+      if (listing.hasCoordinates()) {
+        destinations.add(listing.getLatitude() + "," + listing.getLongitude());
+      } else {
+        destinations.add(listing.getLocation());
+      }
+    }
+
+    return TRAVEL_TIME_CACHE.getTravelTimesInSeconds(originLocation, 
+        destinations);
+  }
+
+  /**
+   * Refreshes the travel times of the most requested pairs for the current 
+   *     time bucket.
+   *
+   * @return the number of pairs that were refreshed.
+   */
+  public static int refreshTravelTimes() throws IOException {
+    return TRAVEL_TIME_CACHE.refresh(
+        DatastoreServiceFactory.getDatastoreService());
+  }
+}
@@ -0,0 +1,173 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.utility;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.Transaction;
+import com.google.gson.Gson;
+import com.google.sps.data.GeocodeOBJ;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.logging.Logger;
+
+/** 
+ * Turns locations into coordinates with the Geocoding API, so that distances 
+ *     can be computed without calling the Distance Matrix API.
+ */
+public final class Geocoder {
+
+  private static final Logger logger = 
+      Logger.getLogger(Geocoder.class.getName());
+
+  //API key used to access the Geocoding api
+  private static final String API_KEY = secret.API_KEY;
+
+  private static final String BASE_URL = 
+      "https://maps.googleapis.com/maps/api/geocode/json?";
+
+  // How long to wait for the Geocoding API in milliseconds
+  private static final int CONNECT_TIMEOUT = 2000;
+  private static final int READ_TIMEOUT = 5000;
+
+  // The properties of a listing Entity that store its coordinates
+  public static final String LATITUDE_PROPERTY = "latitude";
+  public static final String LONGITUDE_PROPERTY = "longitude";
+
+  /**
+   * Looks up a location, which is either an address or a latitude and 
+   *     longitude separated by a space or a comma.
+   *
+   * @param location the location to look up.
+   * @return the GeocodeOBJ of the location.
+   */
+  public static GeocodeOBJ geocode(String location) throws IOException {
+    String query;
+    double[] coordinates = GeoUtility.parseCoordinates(location);
+    if (coordinates != null) {
+      query = "latlng=" + coordinates[0] + "," + coordinates[1];
+    } else {
+      query = "address=" + URLEncoder.encode(location, "UTF-8");
+    }
+
+    URL url = new URL(BASE_URL + query + "&key=" + API_KEY);
+    HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+    try {
+      conn.setConnectTimeout(CONNECT_TIMEOUT);
+      conn.setReadTimeout(READ_TIMEOUT);
+      conn.setRequestMethod("GET");
+
+      int responseCode = conn.getResponseCode();
+      if (responseCode != 200) {
+        throw new IOException("HttpResponseCode: " + responseCode);
+      }
+
+      GeocodeOBJ geocode;
+      try (Reader reader = new InputStreamReader(conn.getInputStream(), 
+          StandardCharsets.UTF_8)) {
+        geocode = new Gson().fromJson(reader, GeocodeOBJ.class);
+      }
+      if (geocode == null) {
+        throw new IOException("Empty Geocoding response");
+      }
+
+      return geocode;
+    } finally {
+      conn.disconnect();
+    }
+  }
+
+  /**
+   * Geocodes a stored listing and writes only its coordinates and geocells, 
+   *     so that edits made while the Geocoding API was called are kept. 
+   *     Nothing is written if the listing was deleted or its location 
+   *     changed, since the new location is geocoded by the edit.
+   *
+   * @param datastore the DatastoreService that connects to the back end.
+   * @param listingKey the key of the listing Entity.
+   */
+  public static void geocodeListing(DatastoreService datastore, 
+      Key listingKey) throws Exception {
+    Entity geocodedEntity;
+    try {
+      geocodedEntity = datastore.get(listingKey);
+    } catch (EntityNotFoundException e) {
+      return;
+    }
+    updateCoordinates(geocodedEntity);
+
+    Transaction transaction = datastore.beginTransaction();
+    try {
+      Entity listingEntity = datastore.get(transaction, listingKey);
+      if (!Objects.equals(listingEntity.getProperty("location"), 
+          geocodedEntity.getProperty("location"))) {
+        return;
+      }
+
+      listingEntity.setProperty(LATITUDE_PROPERTY, 
+          geocodedEntity.getProperty(LATITUDE_PROPERTY));
+      listingEntity.setProperty(LONGITUDE_PROPERTY, 
+          geocodedEntity.getProperty(LONGITUDE_PROPERTY));
+      Geohash.updateGeocells(listingEntity);
+      datastore.put(transaction, listingEntity);
+      transaction.commit();
+      ListingSpatialIndex.update(listingEntity);
+    } catch (EntityNotFoundException e) {
+      // The listing was deleted while it was geocoded
+    } finally {
+      if (transaction.isActive()) {
+        transaction.rollback();
+      }
+    }
+  }
+
+  /**
+   * Stores the coordinates and geocells of a listing Entity's location in the 
+   *     Entity. 
+   *     If the location cannot be found, the coordinates are stored as null 
+   *     and distances to the listing are computed by the Distance Matrix API.
+   *
+   * @param listingEntity the entity that represents a listing.
+   */
+  public static void updateCoordinates(Entity listingEntity) {
+    Double latitude = null;
+    Double longitude = null;
+    String location = (String) listingEntity.getProperty("location");
+    try {
+      GeocodeOBJ geocode = null;
+      if (location != null) {
+        geocode = geocode(location);
+      }
+      if (geocode != null && geocode.isFound()) {
+        latitude = geocode.getLatitude();
+        longitude = geocode.getLongitude();
+      }
+    } catch (IOException e) {
+      logger.warning("Could not geocode listing: " + e.getMessage());
+    }
+
+    listingEntity.setProperty(LATITUDE_PROPERTY, latitude);
+    listingEntity.setProperty(LONGITUDE_PROPERTY, longitude);
+    Geohash.updateGeocells(listingEntity);
+  }
+}
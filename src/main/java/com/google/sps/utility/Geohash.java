@@ -0,0 +1,209 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.utility;
+
+import com.google.appengine.api.datastore.Entity;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Indexes listings by the geohash cells that contain them, so that a radius 
+ *     search only has to query the few cells around the user instead of 
+ *     every listing.
+ * A geohash splits the world into 32 cells and each of those cells into 32 
+ *     smaller cells and so on, so the geohash of a cell starts with the 
+ *     geohash of every cell that contains it.
+ */
+public final class Geohash {
+
+  // The property of a listing Entity that stores the geohash of every cell 
+  //     that contains the listing, from the largest to the smallest cell
+  public static final String GEOCELLS_PROPERTY = "geocells";
+
+  // The cell of listings whose location could not be found
+  public static final String UNKNOWN_CELL = "?";
+
+  // The length of the geohash of the smallest cells that are stored, which 
+  //     are about 5 km wide
+  public static final int MAX_PRECISION = 5;
+
+  private static final String BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz";
+
+  // The number of kilometers in one degree of latitude
+  private static final double KILOMETERS_PER_DEGREE = 111.32;
+
+  /**
+   * Returns the geohash of the cell that contains a point.
+   *
+   * @param latitude the latitude of the point in degrees.
+   * @param longitude the longitude of the point in degrees.
+   * @param precision the length of the geohash.
+   * @return the geohash of the cell.
+   */
+  public static String encode(double latitude, double longitude, 
+      int precision) {
+    double minLatitude = -90;
+    double maxLatitude = 90;
+    double minLongitude = -180;
+    double maxLongitude = 180;
+
+    StringBuilder geohash = new StringBuilder(precision);
+    boolean isLongitudeBit = true;
+    int bits = 0;
+    int value = 0;
+    while (geohash.length() < precision) {
+      value <<= 1;
+      if (isLongitudeBit) {
+        double middle = (minLongitude + maxLongitude) / 2;
+        if (longitude >= middle) {
+          value |= 1;
+          minLongitude = middle;
+        } else {
+          maxLongitude = middle;
+        }
+      } else {
+        double middle = (minLatitude + maxLatitude) / 2;
+        if (latitude >= middle) {
+          value |= 1;
+          minLatitude = middle;
+        } else {
+          maxLatitude = middle;
+        }
+      }
+      isLongitudeBit = !isLongitudeBit;
+
+      bits++;
+      if (bits == 5) {
+        geohash.append(BASE32.charAt(value));
+        bits = 0;
+        value = 0;
+      }
+    }
+
+    return geohash.toString();
+  }
+
+  /**
+   * Stores the geohash of every cell that contains a listing Entity's 
+   *     coordinates in the Entity, or UNKNOWN_CELL if it has no coordinates.
+   *
+   * @param listingEntity the entity that represents a listing.
+   */
+  public static void updateGeocells(Entity listingEntity) {
+    Double latitude = 
+        (Double) listingEntity.getProperty(Geocoder.LATITUDE_PROPERTY);
+    Double longitude = 
+        (Double) listingEntity.getProperty(Geocoder.LONGITUDE_PROPERTY);
+
+    List<String> geocells = new ArrayList<String>();
+    if (latitude == null || longitude == null) {
+      geocells.add(UNKNOWN_CELL);
+    } else {
+      String geohash = encode(latitude, longitude, MAX_PRECISION);
+      for (int precision = 1; precision <= MAX_PRECISION; precision++) {
+        geocells.add(geohash.substring(0, precision));
+      }
+    }
+
+    listingEntity.setProperty(GEOCELLS_PROPERTY, geocells);
+  }
+
+  /**
+   * Returns the geohashes of the cells that together cover a circle around 
+   *     a point: the cell that contains the point and the cells around it, 
+   *     using the smallest cells that are at least as large as the radius.
+   *
+   * @param latitude the latitude of the center in degrees.
+   * @param longitude the longitude of the center in degrees.
+   * @param radiusInMeters the radius of the circle.
+   * @return the geohashes of at most 9 cells, or null if the circle is too 
+   *     large to be covered by cells.
+   */
+  public static List<String> getCoveringCells(double latitude, 
+      double longitude, double radiusInMeters) {
+    double radiusInKilometers = radiusInMeters / 1000;
+    double latitudeRadius = radiusInKilometers / KILOMETERS_PER_DEGREE;
+
+    // Degrees of longitude are the shortest at the edge of the circle that 
+    //     is closest to a pole
+    double maxLatitude = Math.min(Math.abs(latitude) + latitudeRadius, 89.9);
+    double longitudeRadius = radiusInKilometers 
+        / (KILOMETERS_PER_DEGREE * Math.cos(Math.toRadians(maxLatitude)));
+
+    for (int precision = MAX_PRECISION; precision >= 1; precision--) {
+      double cellHeight = getCellHeight(precision);
+      double cellWidth = getCellWidth(precision);
+      if (cellHeight < latitudeRadius || cellWidth < longitudeRadius) {
+        continue;
+      }
+
+      LinkedHashSet<String> cells = new LinkedHashSet<String>();
+      for (int i = -1; i <= 1; i++) {
+        double cellLatitude = latitude + i * cellHeight;
+        if (cellLatitude < -90 || cellLatitude > 90) {
+          continue;
+        }
+        for (int j = -1; j <= 1; j++) {
+          cells.add(encode(cellLatitude, 
+              wrapLongitude(longitude + j * cellWidth), precision));
+        }
+      }
+
+      return new ArrayList<String>(cells);
+    }
+
+    return null;
+  }
+
+  /**
+   * Returns the height of a cell.
+   *
+   * @param precision the length of the geohash of the cell.
+   * @return the height of the cell in degrees of latitude.
+   */
+  private static double getCellHeight(int precision) {
+    int latitudeBits = 5 * precision / 2;
+    return 180 / Math.pow(2, latitudeBits);
+  }
+
+  /**
+   * Returns the width of a cell.
+   *
+   * @param precision the length of the geohash of the cell.
+   * @return the width of the cell in degrees of longitude.
+   */
+  private static double getCellWidth(int precision) {
+    int longitudeBits = (5 * precision + 1) / 2;
+    return 360 / Math.pow(2, longitudeBits);
+  }
+
+  /**
+   * Wraps a longitude that went past the antimeridian back into -180..180.
+   *
+   * @param longitude the longitude in degrees.
+   * @return the same longitude between -180 and 180 degrees.
+   */
+  private static double wrapLongitude(double longitude) {
+    if (longitude >= 180) {
+      return longitude - 360;
+    }
+    if (longitude < -180) {
+      return longitude + 360;
+    }
+
+    return longitude;
+  }
+}
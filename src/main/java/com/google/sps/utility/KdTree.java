@@ -0,0 +1,476 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.utility;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * A k-d tree over points on the Earth that finds the points nearest to a 
+ *     location, page by page.
+ * Points are stored as unit vectors, so the straight-line (chord) distance 
+ *     between them orders them the same as the distance along the Earth's 
+ *     surface and the tree needs no special case for the poles or the date 
+ *     line.
+ * Safe to share between requests.
+ *
+ * @param <T> the value stored with each point.
+ */
+public final class KdTree<T> {
+
+  // The number of dimensions of a point
+  private static final int DIMENSIONS = 3;
+
+  // The tree is rebuilt once this many points have been inserted into it 
+  //     since it was last built, or half of its points are removed
+  private static final int MIN_REBUILD_INSERTS = 64;
+
+  /** Checks whether a point's value matches a search. */
+  public interface Matcher<T> {
+    public boolean matches(T value);
+  }
+
+  /** A point found by a search and how far it is from the location. */
+  public static final class Neighbor<T> {
+    private final String key;
+    private final T value;
+    private final double chordSquared;
+
+    private Neighbor(String key, T value, double chordSquared) {
+      this.key = key;
+      this.value = value;
+      this.chordSquared = chordSquared;
+    }
+
+    public String getKey() {
+      return key;
+    }
+
+    public T getValue() {
+      return value;
+    }
+
+    /**
+     * Returns the distance along the Earth's surface to the location.
+     *
+     * @return the distance in meters.
+     */
+    public double getDistanceInMeters() {
+      return 2 * GeoUtility.EARTH_RADIUS 
+          * Math.asin(Math.min(1, Math.sqrt(chordSquared) / 2));
+    }
+
+    /**
+     * Returns a String that a search can continue after.
+     *
+     * @return the position of this point in the search.
+     */
+    public String toCursorString() {
+      return chordSquared + ":" + key;
+    }
+  }
+
+  private static final class Node<T> {
+    private final String key;
+    private final T value;
+    private final double[] point;
+    private final int axis;
+    // The bounds of every point in the subtree rooted at this node
+    private final double[] min;
+    private final double[] max;
+    private Node<T> left;
+    private Node<T> right;
+    private boolean removed = false;
+
+    private Node(String key, T value, double[] point, int axis) {
+      this.key = key;
+      this.value = value;
+      this.point = point;
+      this.axis = axis;
+      this.min = point.clone();
+      this.max = point.clone();
+    }
+  }
+
+  // A subtree waiting to be searched and how near it is to the location
+  private static final class Subtree<T> {
+    private final Node<T> root;
+    private final double minChordSquared;
+
+    private Subtree(Node<T> root, double[] target) {
+      this.root = root;
+      this.minChordSquared = minChordSquared(target, root);
+    }
+  }
+
+  // Orders neighbors by distance, then by key so that every point has one 
+  //     position in a search
+  private final Comparator<Neighbor<T>> neighborComparator = 
+      new Comparator<Neighbor<T>>() {
+        @Override
+        public int compare(Neighbor<T> a, Neighbor<T> b) {
+          int comparison = Double.compare(a.chordSquared, b.chordSquared);
+          if (comparison != 0) {
+            return comparison;
+          }
+
+          return a.key.compareTo(b.key);
+        }
+      };
+
+  private Node<T> root = null;
+  private final HashMap<String, Node<T>> nodesByKey = 
+      new HashMap<String, Node<T>>();
+  private int removedCount = 0;
+  private int insertsSinceBuild = 0;
+
+  /**
+   * Adds a point or moves it if a point with the same key is in the tree.
+   *
+   * @param key the unique key of the point.
+   * @param latitude the latitude of the point in degrees.
+   * @param longitude the longitude of the point in degrees.
+   * @param value the value stored with the point.
+   */
+  public synchronized void put(String key, double latitude, double longitude, 
+      T value) {
+    remove(key);
+
+    double[] point = toPoint(latitude, longitude);
+    if (root == null) {
+      root = new Node<T>(key, value, point, 0);
+      nodesByKey.put(key, root);
+      return;
+    }
+
+    Node<T> parent = root;
+    while (true) {
+      expandBounds(parent, point);
+      boolean isLeft = point[parent.axis] < parent.point[parent.axis];
+      Node<T> child = isLeft ? parent.left : parent.right;
+      if (child == null) {
+        Node<T> node = new Node<T>(key, value, point, 
+            (parent.axis + 1) % DIMENSIONS);
+        if (isLeft) {
+          parent.left = node;
+        } else {
+          parent.right = node;
+        }
+        nodesByKey.put(key, node);
+        break;
+      }
+      parent = child;
+    }
+
+    insertsSinceBuild++;
+    if (insertsSinceBuild > Math.max(MIN_REBUILD_INSERTS, nodesByKey.size())) {
+      rebuild();
+    }
+  }
+
+  /**
+   * Removes a point.
+   *
+   * @param key the key of the point to remove.
+   */
+  public synchronized void remove(String key) {
+    Node<T> node = nodesByKey.remove(key);
+    if (node == null) {
+      return;
+    }
+
+    // The node is only marked, as it still splits its subtree
+    node.removed = true;
+    removedCount++;
+    if (removedCount > nodesByKey.size()) {
+      rebuild();
+    }
+  }
+
+  /**
+   * Returns the number of points in the tree.
+   *
+   * @return the number of points.
+   */
+  public synchronized int size() {
+    return nodesByKey.size();
+  }
+
+  /**
+   * Returns the points nearest to a location, in order of distance and then 
+   *     key.
+   *
+   * @param latitude the latitude of the location in degrees.
+   * @param longitude the longitude of the location in degrees.
+   * @param limit the maximum number of points to return.
+   * @param maxDistanceInMeters the distance beyond which points are not 
+   *     returned, or Double.POSITIVE_INFINITY to return points anywhere.
+   * @param cursorString the cursor String of the last point of the previous 
+   *     page, or "" to return the first page.
+   * @param matcher the values of the points to return, or null to return 
+   *     every point.
+   * @return the nearest points that match.
+   */
+  public synchronized List<Neighbor<T>> nearest(double latitude, 
+      double longitude, int limit, double maxDistanceInMeters, 
+      String cursorString, Matcher<T> matcher) throws IllegalArgumentException {
+    Neighbor<T> after = parseCursorString(cursorString);
+    double maxChordSquared = Double.POSITIVE_INFINITY;
+    if (maxDistanceInMeters < Math.PI * GeoUtility.EARTH_RADIUS) {
+      double maxChord = 2 * Math.sin(
+          maxDistanceInMeters / (2 * GeoUtility.EARTH_RADIUS));
+      maxChordSquared = maxChord * maxChord;
+    }
+
+    // The farthest of the nearest points found so far is at the head
+    PriorityQueue<Neighbor<T>> nearest = new PriorityQueue<Neighbor<T>>(
+        Math.max(1, limit), Collections.reverseOrder(neighborComparator));
+    search(root, toPoint(latitude, longitude), limit, maxChordSquared, after, 
+        matcher, nearest);
+
+    List<Neighbor<T>> neighbors = new ArrayList<Neighbor<T>>(nearest);
+    Collections.sort(neighbors, neighborComparator);
+
+    return neighbors;
+  }
+
+  /**
+   * Adds the points that are nearer than the farthest point found so far, 
+   *     visiting the subtrees nearest to the location first so that the 
+   *     search can stop at the first subtree that is too far away. Subtrees 
+   *     that are entirely before the cursor are skipped.
+   *
+   * @param root the root of the tree.
+   * @param target the location as a unit vector.
+   * @param limit the maximum number of points to find.
+   * @param maxChordSquared the squared chord beyond which points are skipped.
+   * @param after the last point of the previous page or null.
+   * @param matcher the values of the points to find or null.
+   * @param nearest the nearest points found so far.
+   */
+  private void search(Node<T> root, double[] target, int limit, 
+      double maxChordSquared, Neighbor<T> after, Matcher<T> matcher, 
+      PriorityQueue<Neighbor<T>> nearest) {
+    if (root == null || limit <= 0) {
+      return;
+    }
+
+    // The subtrees to visit, nearest first
+    PriorityQueue<Subtree<T>> subtrees = new PriorityQueue<Subtree<T>>(64, 
+        new Comparator<Subtree<T>>() {
+          @Override
+          public int compare(Subtree<T> a, Subtree<T> b) {
+            return Double.compare(a.minChordSquared, b.minChordSquared);
+          }
+        });
+    subtrees.add(new Subtree<T>(root, target));
+    while (!subtrees.isEmpty()) {
+      Subtree<T> subtree = subtrees.poll();
+      double bound = maxChordSquared;
+      if (nearest.size() == limit) {
+        bound = Math.min(bound, nearest.peek().chordSquared);
+      }
+      if (subtree.minChordSquared > bound) {
+        return;
+      }
+
+      Node<T> node = subtree.root;
+      if (after != null && maxChordSquared(target, node) < after.chordSquared) {
+        continue;
+      }
+
+      if (!node.removed) {
+        Neighbor<T> neighbor = new Neighbor<T>(node.key, node.value, 
+            chordSquared(target, node.point));
+        if (neighbor.chordSquared <= maxChordSquared 
+            && (after == null 
+                || neighborComparator.compare(neighbor, after) > 0)
+            && (matcher == null || matcher.matches(node.value))) {
+          if (nearest.size() < limit) {
+            nearest.add(neighbor);
+          } else if (neighborComparator.compare(neighbor, nearest.peek()) < 0) {
+            nearest.poll();
+            nearest.add(neighbor);
+          }
+        }
+      }
+
+      if (node.left != null) {
+        subtrees.add(new Subtree<T>(node.left, target));
+      }
+      if (node.right != null) {
+        subtrees.add(new Subtree<T>(node.right, target));
+      }
+    }
+  }
+
+  /** Rebuilds the tree from the points in it so that it is balanced. */
+  private void rebuild() {
+    List<Node<T>> nodes = new ArrayList<Node<T>>();
+    for (Node<T> node : nodesByKey.values()) {
+      nodes.add(node);
+    }
+
+    nodesByKey.clear();
+    root = build(nodes, 0);
+    removedCount = 0;
+    insertsSinceBuild = 0;
+  }
+
+  /**
+   * Builds a balanced subtree by splitting the points at their median on 
+   *     each axis in turn.
+   *
+   * @param nodes the nodes of the points in the subtree.
+   * @param axis the axis the root of the subtree splits.
+   * @return the root of the subtree or null if there are no points.
+   */
+  private Node<T> build(List<Node<T>> nodes, final int axis) {
+    if (nodes.isEmpty()) {
+      return null;
+    }
+
+    Collections.sort(nodes, new Comparator<Node<T>>() {
+      @Override
+      public int compare(Node<T> a, Node<T> b) {
+        return Double.compare(a.point[axis], b.point[axis]);
+      }
+    });
+
+    // Points equal to the median on the axis go to the right, like in put
+    int median = nodes.size() / 2;
+    while (median > 0 
+        && nodes.get(median - 1).point[axis] == nodes.get(median).point[axis]) {
+      median--;
+    }
+
+    Node<T> oldNode = nodes.get(median);
+    Node<T> node = new Node<T>(oldNode.key, oldNode.value, oldNode.point, 
+        axis);
+    nodesByKey.put(node.key, node);
+    int nextAxis = (axis + 1) % DIMENSIONS;
+    node.left = build(new ArrayList<Node<T>>(nodes.subList(0, median)), 
+        nextAxis);
+    node.right = build(new ArrayList<Node<T>>(
+        nodes.subList(median + 1, nodes.size())), nextAxis);
+    if (node.left != null) {
+      expandBounds(node, node.left.min);
+      expandBounds(node, node.left.max);
+    }
+    if (node.right != null) {
+      expandBounds(node, node.right.min);
+      expandBounds(node, node.right.max);
+    }
+
+    return node;
+  }
+
+  /**
+   * Parses the cursor String of a search.
+   *
+   * @param cursorString the cursor String or "".
+   * @return the point the search continues after, or null for the first page.
+   */
+  private Neighbor<T> parseCursorString(String cursorString) 
+      throws IllegalArgumentException {
+    if (cursorString.equals("")) {
+      return null;
+    }
+
+    int separatorIndex = cursorString.indexOf(":");
+    if (separatorIndex < 0) {
+      throw new IllegalArgumentException("Invalid cursor");
+    }
+    try {
+      return new Neighbor<T>(cursorString.substring(separatorIndex + 1), null, 
+          Double.parseDouble(cursorString.substring(0, separatorIndex)));
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid cursor");
+    }
+  }
+
+  /**
+   * Turns a latitude and longitude into a unit vector.
+   *
+   * @param latitude the latitude in degrees.
+   * @param longitude the longitude in degrees.
+   * @return the unit vector.
+   */
+  private static double[] toPoint(double latitude, double longitude) {
+    double latitudeRadians = Math.toRadians(latitude);
+    double longitudeRadians = Math.toRadians(longitude);
+
+    return new double[] {
+        Math.cos(latitudeRadians) * Math.cos(longitudeRadians), 
+        Math.cos(latitudeRadians) * Math.sin(longitudeRadians), 
+        Math.sin(latitudeRadians)};
+  }
+
+  /**
+   * Grows the bounds of a node to contain a point.
+   *
+   * @param node the node whose bounds to grow.
+   * @param point the point to contain.
+   */
+  private static <T> void expandBounds(Node<T> node, double[] point) {
+    for (int i = 0; i < DIMENSIONS; i++) {
+      node.min[i] = Math.min(node.min[i], point[i]);
+      node.max[i] = Math.max(node.max[i], point[i]);
+    }
+  }
+
+  private static double chordSquared(double[] a, double[] b) {
+    double sum = 0;
+    for (int i = 0; i < DIMENSIONS; i++) {
+      sum += (a[i] - b[i]) * (a[i] - b[i]);
+    }
+
+    return sum;
+  }
+
+  /**
+   * Returns the squared chord to the nearest corner or face of the bounds of 
+   *     a subtree, which no point in the subtree is nearer than.
+   */
+  private static <T> double minChordSquared(double[] target, Node<T> node) {
+    double sum = 0;
+    for (int i = 0; i < DIMENSIONS; i++) {
+      double delta = Math.max(0, 
+          Math.max(node.min[i] - target[i], target[i] - node.max[i]));
+      sum += delta * delta;
+    }
+
+    return sum;
+  }
+
+  /**
+   * Returns the squared chord to the farthest corner of the bounds of a 
+   *     subtree, which no point in the subtree is farther than.
+   */
+  private static <T> double maxChordSquared(double[] target, Node<T> node) {
+    double sum = 0;
+    for (int i = 0; i < DIMENSIONS; i++) {
+      double delta = Math.max(Math.abs(target[i] - node.min[i]), 
+          Math.abs(target[i] - node.max[i]));
+      sum += delta * delta;
+    }
+
+    return sum;
+  }
+}
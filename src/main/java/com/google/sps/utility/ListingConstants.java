@@ -26,6 +26,10 @@ public final class ListingConstants {
   // Used to limit the number of keywords to compare against
   public static final int KEYWORD_MIN = 0;
   public static final int KEYWORD_MAX = 64;
+  // Used to limit the number of keywords looked up in the keyword index. Each 
+  //     keyword is its own query for each type, so a search runs at most 
+  //     MAX_KEYWORDS times the number of types queries.
+  public static final int MAX_KEYWORDS = 5;
   // Based on the length of the String when no filters are checked (MIN) or 
   //     when all filters are checked and separated by "@" (MAX)
   public static final int FILTER_MIN = 0;
@@ -35,7 +39,14 @@ public final class ListingConstants {
   public static final int RADIUS_MAX = 101;
   // Based on the number of sort categories
   public static final int SORT_MIN = 1;
-  public static final int SORT_MAX = 3;
+  public static final int SORT_MAX = 4;
 
   public static final int LISTING_LIMIT = 50;
+  // Used to bound the number of listings returned in one page of a search. 
+  //     LISTING_LIMIT is the default page size.
+  public static final int PAGE_SIZE_MIN = 1;
+  public static final int PAGE_SIZE_MAX = 100;
+  // Used to bound the number of listings looked at to fill one page when 
+  //     listings are filtered after they are fetched.
+  public static final int SCAN_LIMIT = 500;
 } 
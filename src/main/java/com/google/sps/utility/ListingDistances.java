@@ -0,0 +1,129 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.utility;
+
+import com.google.sps.data.GeocodeOBJ;
+import com.google.sps.data.Listing;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * The distances between the user and listings during a request.
+ * Created once per request so that the radius filter and the recommended 
+ *     sort measure each listing only once.
+ */
+public final class ListingDistances {
+
+  // The average driving speed used to rank listings by travel time as if it 
+  //     were a distance, in meters per second (50 km/h)
+  static final double AVERAGE_SPEED = 50 * 1000 / 3600.0;
+
+  private final String userLocation;
+  private final GeocodeOBJ origin;
+  private final boolean isTravelTime;
+  // The distance to each listing that has been measured, by listing key
+  private final HashMap<String, Double> distancesByKey = 
+      new HashMap<String, Double>();
+
+  public ListingDistances(String userLocation, GeocodeOBJ origin) {
+    this(userLocation, origin, false);
+  }
+
+  /**
+   * Creates the distances of a request.
+   *
+   * @param userLocation the location the user entered or "".
+   * @param origin the GeocodeOBJ of the user's location or null.
+   * @param isTravelTime true to rank listings by the travel time in traffic 
+   *     instead of by distance.
+   */
+  public ListingDistances(String userLocation, GeocodeOBJ origin, 
+      boolean isTravelTime) {
+    this.userLocation = userLocation;
+    this.origin = origin;
+    this.isTravelTime = isTravelTime;
+  }
+
+  /**
+   * Returns the distance between the user and each listing. Only listings 
+   *     that have not been measured during this request are measured.
+   *
+   * @param listings the listings to measure.
+   * @return the distance to each listing in meters, in the same order as the 
+   *     listings, or Double.NaN if a listing's location could not be found.
+   */
+  public double[] getDistancesInMeters(List<Listing> listings) 
+      throws IOException {
+    List<Listing> unmeasuredListings = new ArrayList<Listing>();
+    for (Listing listing : listings) {
+      if (!distancesByKey.containsKey(listing.getKeyString())) {
+        unmeasuredListings.add(listing);
+      }
+    }
+
+    if (!unmeasuredListings.isEmpty()) {
+      double[] newDistances = GeoUtility.getDistancesInMeters(userLocation, 
+          origin, unmeasuredListings);
+      for (int i = 0; i < unmeasuredListings.size(); i++) {
+        distancesByKey.put(unmeasuredListings.get(i).getKeyString(), 
+            newDistances[i]);
+      }
+    }
+
+    double[] distances = new double[listings.size()];
+    for (int i = 0; i < listings.size(); i++) {
+      distances[i] = distancesByKey.get(listings.get(i).getKeyString());
+    }
+
+    return distances;
+  }
+
+  /**
+   * Returns the distance used to rank each listing. In travel time mode, this 
+   *     is the distance that could be driven at AVERAGE_SPEED in the travel 
+   *     time to the listing, so that a listing behind traffic ranks as if it 
+   *     were further away. Travel times are read from the TravelTimeCache.
+   *
+   * @param listings the listings to rank.
+   * @return the distance to each listing in meters, in the same order as the 
+   *     listings, or Double.NaN if a listing's location could not be found.
+   */
+  public double[] getRankingDistancesInMeters(List<Listing> listings) 
+      throws IOException {
+    if (!isTravelTime) {
+      return getDistancesInMeters(listings);
+    }
+
+    double[] travelTimes = GeoUtility.getTravelTimesInSeconds(userLocation, 
+        origin, listings);
+    double[] distances = new double[travelTimes.length];
+    for (int i = 0; i < travelTimes.length; i++) {
+      distances[i] = travelTimes[i] * AVERAGE_SPEED;
+    }
+
+    return distances;
+  }
+
+  /**
+   * Returns the location the user entered.
+   *
+   * @return the user's location or "" if the user did not enter one.
+   */
+  public String getUserLocation() {
+    return userLocation;
+  }
+}
@@ -0,0 +1,214 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.utility;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.PropertyProjection;
+import com.google.appengine.api.datastore.Query;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Holds the coordinates and type of every listing in this instance, so that 
+ *     the listings nearest to a user can be found without a query.
+ * Loaded from Datastore by the warmup request of the instance (see WarmUp) 
+ *     and kept current by the servlets that create, update, and delete 
+ *     listings. Listings written by other instances are picked up when the 
+ *     index is reloaded every RELOAD_INTERVAL ms. The index is loaded by one 
+ *     request at a time without holding the lock, and other requests keep 
+ *     using the old index, or do not use the index until the first load is 
+ *     done.
+ */
+public final class ListingSpatialIndex {
+
+  private static final long RELOAD_INTERVAL = 10 * 60 * 1000;
+
+  // The number of listings to load from Datastore at a time
+  private static final int CHUNK_SIZE = 500;
+
+  // The coordinates of each listing and its type, by listing key String
+  private static KdTree<String> tree = null;
+  private static long loadedAtMillis = 0;
+  private static boolean isReloading = false;
+
+  /**
+   * Returns true if the index can be searched. Loads the index if it has not 
+   *     been loaded and no other request is loading it.
+   *
+   * @param datastore the DatastoreService that connects to the back end.
+   * @return a boolean that states whether the index has been loaded.
+   */
+  public static boolean isReady(DatastoreService datastore) {
+    return getTree(datastore) != null;
+  }
+
+  /**
+   * Returns the listings nearest to a location, in order of distance.
+   *
+   * @param datastore the DatastoreService that connects to the back end.
+   * @param latitude the latitude of the location in degrees.
+   * @param longitude the longitude of the location in degrees.
+   * @param limit the maximum number of listings to return.
+   * @param maxDistanceInMeters the distance beyond which listings are not 
+   *     returned, or Double.POSITIVE_INFINITY to return listings anywhere.
+   * @param cursorString the cursor String of the last listing of the 
+   *     previous page, or "" to return the first page.
+   * @param types the types of the listings to return, or an empty List to 
+   *     return every type.
+   * @return the nearest listings, whose keys are listing key Strings, or an 
+   *     empty List if the index is not ready.
+   */
+  public static List<KdTree.Neighbor<String>> nearest(
+      DatastoreService datastore, double latitude, double longitude, 
+      int limit, double maxDistanceInMeters, String cursorString, 
+      final List<String> types) throws IllegalArgumentException {
+    KdTree.Matcher<String> typeMatcher = null;
+    if (!types.isEmpty()) {
+      typeMatcher = new KdTree.Matcher<String>() {
+        @Override
+        public boolean matches(String type) {
+          return types.contains(type);
+        }
+      };
+    }
+
+    KdTree<String> currentTree = getTree(datastore);
+    if (currentTree == null) {
+      return Collections.<KdTree.Neighbor<String>>emptyList();
+    }
+
+    return currentTree.nearest(latitude, longitude, limit, 
+        maxDistanceInMeters, cursorString, typeMatcher);
+  }
+
+  /**
+   * Adds a listing to the index, moves it if its coordinates changed, or 
+   *     removes it if its location could not be found.
+   * Must be called after a listing Entity is put in Datastore.
+   *
+   * @param listingEntity the listing Entity that was put.
+   */
+  public static void update(Entity listingEntity) {
+    KdTree<String> currentTree = getLoadedTree();
+    if (currentTree == null) {
+      // The listing is loaded with the rest of the index
+      return;
+    }
+
+    String listingKeyString = KeyFactory.keyToString(listingEntity.getKey());
+    Object latitude = listingEntity.getProperty(Geocoder.LATITUDE_PROPERTY);
+    Object longitude = listingEntity.getProperty(Geocoder.LONGITUDE_PROPERTY);
+    if (latitude instanceof Number && longitude instanceof Number) {
+      currentTree.put(listingKeyString, ((Number) latitude).doubleValue(), 
+          ((Number) longitude).doubleValue(), 
+          (String) listingEntity.getProperty("type"));
+    } else {
+      currentTree.remove(listingKeyString);
+    }
+  }
+
+  /**
+   * Removes a listing from the index.
+   * Must be called after a listing Entity is deleted from Datastore.
+   *
+   * @param listingKeyString the key String of the listing that was deleted.
+   */
+  public static void remove(String listingKeyString) {
+    KdTree<String> currentTree = getLoadedTree();
+    if (currentTree != null) {
+      currentTree.remove(listingKeyString);
+    }
+  }
+
+  /**
+   * Returns the index, loading it if it has not been loaded or is older than 
+   *     RELOAD_INTERVAL, unless another request is loading it.
+   *
+   * @param datastore the DatastoreService that connects to the back end.
+   * @return the index, or null if another request is loading the first 
+   *     index.
+   */
+  private static KdTree<String> getTree(DatastoreService datastore) {
+    synchronized (ListingSpatialIndex.class) {
+      if (isReloading || (tree != null 
+          && System.currentTimeMillis() - loadedAtMillis <= RELOAD_INTERVAL)) {
+        return tree;
+      }
+      isReloading = true;
+    }
+
+    // Other requests keep using the old index while this request reloads it
+    KdTree<String> newTree;
+    try {
+      newTree = load(datastore);
+    } finally {
+      synchronized (ListingSpatialIndex.class) {
+        isReloading = false;
+      }
+    }
+
+    synchronized (ListingSpatialIndex.class) {
+      tree = newTree;
+      loadedAtMillis = System.currentTimeMillis();
+    }
+
+    return newTree;
+  }
+
+  /**
+   * Returns the index if it has been loaded.
+   *
+   * @return the index or null.
+   */
+  private static synchronized KdTree<String> getLoadedTree() {
+    return tree;
+  }
+
+  /**
+   * Loads the coordinates and type of every listing with a projection query, 
+   *     so that only the index is read.
+   *
+   * @param datastore the DatastoreService that connects to the back end.
+   * @return a new index of every listing that has coordinates.
+   */
+  private static KdTree<String> load(DatastoreService datastore) {
+    Query query = new Query("Listing");
+    query.addProjection(new PropertyProjection(Geocoder.LATITUDE_PROPERTY, 
+        Double.class));
+    query.addProjection(new PropertyProjection(Geocoder.LONGITUDE_PROPERTY, 
+        Double.class));
+    query.addProjection(new PropertyProjection("type", String.class));
+
+    KdTree<String> newTree = new KdTree<String>();
+    for (Entity listingEntity : datastore.prepare(query).asIterable(
+        FetchOptions.Builder.withChunkSize(CHUNK_SIZE))) {
+      Object latitude = listingEntity.getProperty(Geocoder.LATITUDE_PROPERTY);
+      Object longitude = listingEntity.getProperty(
+          Geocoder.LONGITUDE_PROPERTY);
+      // Listings whose location could not be found store null coordinates
+      if (latitude instanceof Number && longitude instanceof Number) {
+        newTree.put(KeyFactory.keyToString(listingEntity.getKey()), 
+            ((Number) latitude).doubleValue(), 
+            ((Number) longitude).doubleValue(), 
+            (String) listingEntity.getProperty("type"));
+      }
+    }
+
+    return newTree;
+  }
+}
@@ -0,0 +1,269 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.utility;
+
+import com.google.appengine.api.datastore.AsyncDatastoreService;
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.QueryResultIterator;
+import com.google.sps.data.Listing;
+import com.google.sps.data.ListingCardProjection;
+import com.google.sps.data.ViewerContext;
+
+/**
+ * The results of one listing query, sorted by a property or in key order, 
+ *     that can be merged with the results of other listing queries.
+ * The query is run with the AsyncDatastoreService, so it starts running as 
+ *     soon as the stream is opened and streams can be fetched in parallel.
+ */
+public final class ListingStream {
+
+  // The cursor String of a stream that has no more listings
+  static final String EXHAUSTED_CURSOR = "*";
+
+  private final QueryResultIterator<Entity> iterator;
+  private final ListingCardProjection cardProjection;
+  // The number property the query is sorted by in descending order, or null 
+  //     if the query is in key order
+  private final String sortProperty;
+  // The next listing Entity of the stream, or null if it has not been fetched
+  private Entity head = null;
+  // The cursor that points right before head
+  private Cursor headCursor = null;
+  private boolean isExhausted = false;
+  private boolean isCursorSupported = true;
+  // How long the stream waited for Datastore and turned Entities into 
+  //     Listings, and how many Entities and Listings that was
+  private long fetchNanos = 0;
+  private int fetchCount = 0;
+  private long materializeNanos = 0;
+  private int materializeCount = 0;
+
+  private ListingStream(QueryResultIterator<Entity> iterator, 
+      ListingCardProjection cardProjection, String sortProperty) {
+    this.iterator = iterator;
+    this.cardProjection = cardProjection;
+    this.sortProperty = sortProperty;
+    this.isExhausted = iterator == null;
+  }
+
+  /**
+   * Starts running a listing query and returns the stream of its results.
+   *
+   * @param datastore the AsyncDatastoreService that connects to the back end.
+   * @param query the query that returns listing Entities.
+   * @param cardProjection the projections of the query if it only returns the 
+   *     properties shown on a listing preview, or null if it returns whole 
+   *     listing Entities.
+   * @param sortProperty the number property the query is sorted by in 
+   *     descending order, or null if the query is not sorted.
+   * @param cursorString the web safe String of the cursor to start at, "" 
+   *     to start at the first listing, or EXHAUSTED_CURSOR if a previous page 
+   *     already returned every listing of the query.
+   * @param pageSize the maximum number of Listings in a page.
+   * @return the stream of listings returned by the query.
+   */
+  public static ListingStream openListingStream(AsyncDatastoreService datastore,
+      Query query, ListingCardProjection cardProjection, String sortProperty, 
+      String cursorString, int pageSize) throws Exception {
+    if (cursorString.equals(EXHAUSTED_CURSOR)) {
+      return new ListingStream(null, cardProjection, sortProperty);
+    }
+
+    QueryResultIterator<Entity> iterator = 
+        datastore.prepare(query).asQueryResultIterator(
+            FetchListingsUtility.createFetchOptions(pageSize, cursorString));
+
+    return new ListingStream(iterator, cardProjection, sortProperty);
+  }
+
+  /**
+   * Returns the key of the next listing Entity without removing it from the 
+   *     stream. Waits for the query if the listing has not been fetched yet.
+   *
+   * @return the key of the next listing Entity or null if there are no more.
+   */
+  public Key peekKey() {
+    if (head == null && !isExhausted) {
+      long startNanos = System.nanoTime();
+      headCursor = getCursor();
+      if (iterator.hasNext()) {
+        head = iterator.next();
+        fetchCount++;
+      } else {
+        isExhausted = true;
+      }
+      fetchNanos += System.nanoTime() - startNanos;
+    }
+
+    if (head == null) {
+      return null;
+    }
+
+    return head.getKey();
+  }
+
+  /**
+   * Returns true if the next listing Entity of this stream comes before the 
+   *     next listing Entity of another stream of the same kind of query, 
+   *     which is the order a single query would return them in.
+   *
+   * @param other another stream that is not exhausted.
+   * @return a boolean that states whether this stream's listing comes first.
+   */
+  public boolean ranksBefore(ListingStream other) {
+    Key key = peekKey();
+    Key otherKey = other.peekKey();
+    if (sortProperty != null) {
+      double value = ((Number) head.getProperty(sortProperty)).doubleValue();
+      double otherValue = 
+          ((Number) other.head.getProperty(sortProperty)).doubleValue();
+      if (value != otherValue) {
+        return value > otherValue;
+      }
+    }
+
+    return key.compareTo(otherKey) < 0;
+  }
+
+  /**
+   * Removes the next listing Entity from the stream and turns it into a 
+   *     Listing.
+   *
+   * @param viewer the user viewing this listing.
+   * @return the next Listing or null if there are no more.
+   */
+  public Listing next(ViewerContext viewer) {
+    if (peekKey() == null) {
+      return null;
+    }
+
+    Entity entity = head;
+    head = null;
+    long startNanos = System.nanoTime();
+    Listing listing;
+    if (cardProjection == null) {
+      listing = Listing.createListing(entity, viewer);
+    } else {
+      listing = cardProjection.createListing(entity, viewer);
+    }
+    materializeNanos += System.nanoTime() - startNanos;
+    materializeCount++;
+
+    return listing;
+  }
+
+  /**
+   * Removes the next listing Entity from the stream without turning it into 
+   *     a Listing.
+   */
+  public void skip() {
+    if (peekKey() != null) {
+      head = null;
+    }
+  }
+
+  /**
+   * Returns the cursor that points right before the next listing Entity of 
+   *     the stream.
+   *
+   * @return the cursor, or null if the stream is exhausted or the query does 
+   *     not support cursors.
+   */
+  public Cursor getPosition() {
+    if (isExhausted) {
+      return null;
+    }
+
+    if (head != null) {
+      return headCursor;
+    }
+
+    return getCursor();
+  }
+
+  /**
+   * Returns true if Datastore can create cursors for this query. It cannot 
+   *     for queries that combine filters with OR or IN.
+   *
+   * @return a boolean that states whether this stream has cursors.
+   */
+  public boolean isCursorSupported() {
+    return isCursorSupported;
+  }
+
+  /**
+   * Returns true if there are no more listing Entities in the stream.
+   *
+   * @return a boolean that states whether this stream is exhausted.
+   */
+  public boolean isExhausted() {
+    return peekKey() == null;
+  }
+
+  /**
+   * Returns how long this stream waited for Datastore to return listing 
+   *     Entities.
+   *
+   * @return the fetch time in nanoseconds.
+   */
+  public long getFetchNanos() {
+    return fetchNanos;
+  }
+
+  /**
+   * Returns the number of listing Entities fetched from Datastore.
+   *
+   * @return the number of Entities fetched.
+   */
+  public int getFetchCount() {
+    return fetchCount;
+  }
+
+  /**
+   * Returns how long this stream spent turning Entities into Listings.
+   *
+   * @return the materialize time in nanoseconds.
+   */
+  public long getMaterializeNanos() {
+    return materializeNanos;
+  }
+
+  /**
+   * Returns the number of Entities turned into Listings.
+   *
+   * @return the number of Listings created.
+   */
+  public int getMaterializeCount() {
+    return materializeCount;
+  }
+
+  /**
+   * Returns the cursor that points right after the last Entity returned by 
+   *     the iterator.
+   *
+   * @return the cursor or null if the query does not support cursors.
+   */
+  private Cursor getCursor() {
+    try {
+      return iterator.getCursor();
+    } catch (IllegalStateException e) {
+      isCursorSupported = false;
+      return null;
+    }
+  }
+}
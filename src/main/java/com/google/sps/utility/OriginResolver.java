@@ -0,0 +1,82 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.utility;
+
+import com.google.appengine.api.memcache.Expiration;
+import com.google.appengine.api.memcache.MemcacheService;
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
+import com.google.gson.Gson;
+import com.google.sps.data.GeocodeOBJ;
+import java.io.IOException;
+
+/**
+ * Resolves the location a user searches from to a place with a formatted 
+ *     address and coordinates. Each location is looked up with the 
+ *     Geocoding API once and then cached, first in this instance and then in 
+ *     memcache so that every instance shares it.
+ */
+public final class OriginResolver {
+
+  // How long a resolved location stays in the caches
+  private static final int TIME_TO_LIVE_SECONDS = 24 * 60 * 60;
+  // The maximum number of locations this instance holds
+  private static final int MAX_LOCAL_ENTRIES = 1000;
+
+  private static final String KEY_PREFIX = "origin:";
+
+  private static final TtlLruCache<String, GeocodeOBJ> LOCAL_CACHE = 
+      new TtlLruCache<String, GeocodeOBJ>(MAX_LOCAL_ENTRIES, 
+          TIME_TO_LIVE_SECONDS * 1000L);
+
+  /**
+   * Returns the place a location resolves to. Locations that only differ in 
+   *     case or spacing resolve to the same place.
+   *
+   * @param location the location the user entered.
+   * @return the GeocodeOBJ of the location, which is not found if the 
+   *     Geocoding API could not find it.
+   */
+  public static GeocodeOBJ resolve(String location) throws IOException {
+    String key = KEY_PREFIX + GeoUtility.normalizeLocation(location);
+    GeocodeOBJ origin = LOCAL_CACHE.get(key);
+    if (origin != null) {
+      return origin;
+    }
+
+    // Memcache holds the JSON of the GeocodeOBJ
+    MemcacheService memcache = MemcacheServiceFactory.getMemcacheService();
+    Gson gson = new Gson();
+    Object originJson = memcache.get(key);
+    if (originJson instanceof String) {
+      origin = gson.fromJson((String) originJson, GeocodeOBJ.class);
+    } else {
+      origin = Geocoder.geocode(location);
+      if (origin == null) {
+        throw new IOException("Empty Geocoding response");
+      }
+
+      // Locations that could not be found are cached too, so that searching 
+      //     from them again does not call the API. Temporary errors are not.
+      if (!origin.isAnswered()) {
+        return origin;
+      }
+      memcache.put(key, gson.toJson(origin), 
+          Expiration.byDeltaSeconds(TIME_TO_LIVE_SECONDS));
+    }
+    LOCAL_CACHE.put(key, origin);
+
+    return origin;
+  }
+}
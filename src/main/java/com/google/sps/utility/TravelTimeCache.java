@@ -0,0 +1,404 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.utility;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.google.appengine.api.memcache.Expiration;
+import com.google.appengine.api.memcache.MemcacheService;
+import com.google.appengine.api.taskqueue.QueueFactory;
+import com.google.appengine.api.taskqueue.TaskOptions;
+import com.google.sps.sort.TopK;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Caches travel times in traffic by origin, destination, and time bucket, 
+ *     which is the half hour of the day and whether it is a weekday or the 
+ *     weekend. Traffic at the same time on another day is close enough, so a 
+ *     travel time can be reused until the bucket comes around again.
+ * Searches never wait for the Distance Matrix API. A pair that is not 
+ *     cached is estimated from its distance at AVERAGE_SPEED, and recorded 
+ *     so that refresh requests it at the start of the next bucket. Pairs 
+ *     that are requested often are refreshed at the start of each bucket.
+ */
+public final class TravelTimeCache {
+
+  // The length of a time bucket
+  public static final int BUCKET_MINUTES = 30;
+
+  // How long a travel time stays in the caches. A bucket comes around again 
+  //     after a day or, for the weekend, after a week.
+  private static final int TIME_TO_LIVE_SECONDS = 7 * 24 * 60 * 60;
+  // The maximum number of travel times this instance holds
+  private static final int MAX_LOCAL_ENTRIES = 10000;
+
+  // Buckets are in UTC, so a bucket always covers the same local time of day 
+  //     for a pair, but the weekend starts at midnight UTC
+  private static final TimeZone BUCKET_TIME_ZONE = TimeZone.getTimeZone("UTC");
+
+  private static final String KEY_PREFIX = "travel:";
+  private static final String HITS_PREFIX = "travel-hits:";
+
+  // The travel time of a pair that is not cached is its distance at this 
+  //     speed, so that it ranks by distance until it is refreshed
+  private static final double AVERAGE_SPEED = ListingDistances.AVERAGE_SPEED;
+
+  // The Datastore kind that records the pairs searches ask for
+  public static final String PAIR_KIND = "TravelTimePair";
+  // Datastore does not allow longer key names
+  private static final int MAX_PAIR_LENGTH = 500;
+
+  // Only pairs requested in the last REFRESH_WINDOW ms are refreshed, at most 
+  //     MAX_REFRESH_PAIRS of them
+  private static final long REFRESH_WINDOW = 24 * 60 * 60 * 1000;
+  private static final int MAX_REFRESH_PAIRS = 500;
+  // Datastore writes at most this many Entities in one batch
+  private static final int MAX_BATCH_SIZE = 500;
+
+  private final TtlLruCache<String, Double> localCache = 
+      new TtlLruCache<String, Double>(MAX_LOCAL_ENTRIES, 
+          TIME_TO_LIVE_SECONDS * 1000L);
+  private final MemcacheService memcache;
+  private final DistanceMatrixClient client;
+  private final DistanceProvider estimator;
+
+  /**
+   * Creates a travel time cache.
+   *
+   * @param memcache the MemcacheService shared by all instances.
+   * @param client the client that refresh requests travel times with.
+   * @param estimator the DistanceProvider that estimates pairs that are not 
+   *     cached and are not both coordinates.
+   */
+  public TravelTimeCache(MemcacheService memcache, 
+      DistanceMatrixClient client, DistanceProvider estimator) {
+    this.memcache = memcache;
+    this.client = client;
+    this.estimator = estimator;
+  }
+
+  /**
+   * Returns the travel time from an origin to each destination in the 
+   *     current time bucket. Pairs that are not cached are estimated from 
+   *     their distance, and new pairs are recorded by a task so that they 
+   *     are refreshed in the background.
+   *
+   * @param origin the location to travel from.
+   * @param destinations the locations to travel to.
+   * @return the travel time to each destination in seconds, in the same order 
+   *     as the destinations, or Double.NaN if a destination could not be 
+   *     found.
+   */
+  public double[] getTravelTimesInSeconds(String origin, 
+      List<String> destinations) throws IOException {
+    String bucket = getBucket(System.currentTimeMillis());
+    double[] travelTimes = new double[destinations.size()];
+
+    // The indices of the destinations that are not in this instance's cache, 
+    //     by pair
+    LinkedHashMap<String, List<Integer>> localMisses = 
+        new LinkedHashMap<String, List<Integer>>();
+    List<String> hitPairs = new ArrayList<String>();
+    for (int i = 0; i < destinations.size(); i++) {
+      String pair = createPair(origin, destinations.get(i));
+      Double travelTime = localCache.get(createKey(bucket, pair));
+      if (travelTime != null) {
+        travelTimes[i] = travelTime;
+        hitPairs.add(pair);
+      } else {
+        if (!localMisses.containsKey(pair)) {
+          localMisses.put(pair, new ArrayList<Integer>());
+        }
+        localMisses.get(pair).add(i);
+      }
+    }
+
+    List<String> missKeys = new ArrayList<String>();
+    for (String pair : localMisses.keySet()) {
+      missKeys.add(createKey(bucket, pair));
+    }
+    Map<String, Object> memcacheHits = memcache.getAll(missKeys);
+
+    List<String> misses = new ArrayList<String>();
+    List<String> missedDestinations = new ArrayList<String>();
+    for (Map.Entry<String, List<Integer>> localMiss : localMisses.entrySet()) {
+      String key = createKey(bucket, localMiss.getKey());
+      Object travelTime = memcacheHits.get(key);
+      if (travelTime instanceof Double) {
+        localCache.put(key, (Double) travelTime);
+        for (int index : localMiss.getValue()) {
+          travelTimes[index] = (Double) travelTime;
+        }
+        hitPairs.add(localMiss.getKey());
+      } else {
+        misses.add(localMiss.getKey());
+        missedDestinations.add(destinations.get(localMiss.getValue().get(0)));
+      }
+    }
+
+    // Requests are counted in memcache and added to the pairs by refresh, 
+    //     so that a search does not write to Datastore
+    List<String> hitKeys = new ArrayList<String>();
+    for (String pair : hitPairs) {
+      hitKeys.add(HITS_PREFIX + pair);
+    }
+    for (String pair : misses) {
+      hitKeys.add(HITS_PREFIX + pair);
+    }
+    Map<String, Long> requests = memcache.incrementAll(hitKeys, 1, 0L);
+
+    if (misses.isEmpty()) {
+      return travelTimes;
+    }
+
+    double[] missedTravelTimes = 
+        estimateTravelTimesInSeconds(origin, missedDestinations);
+    List<String> newDestinations = new ArrayList<String>();
+    for (int i = 0; i < misses.size(); i++) {
+      for (int index : localMisses.get(misses.get(i))) {
+        travelTimes[index] = missedTravelTimes[i];
+      }
+
+      // A pair is only recorded the first time it is requested after a 
+      //     refresh
+      Long pairRequests = requests.get(HITS_PREFIX + misses.get(i));
+      if (pairRequests != null && pairRequests == 1 
+          && misses.get(i).length() <= MAX_PAIR_LENGTH) {
+        newDestinations.add(missedDestinations.get(i));
+      }
+    }
+    if (!newDestinations.isEmpty()) {
+      TaskOptions task = TaskOptions.Builder.withUrl("/record-travel-pairs")
+          .param("origin", origin);
+      for (String destination : newDestinations) {
+        task.param("destination", destination);
+      }
+      QueueFactory.getDefaultQueue().add(task);
+    }
+
+    return travelTimes;
+  }
+
+  /**
+   * Estimates the travel time from an origin to each destination from the 
+   *     distance between them at AVERAGE_SPEED. Pairs of coordinates are 
+   *     measured locally and other pairs by the estimator.
+   *
+   * @param origin the location to travel from.
+   * @param destinations the locations to travel to.
+   * @return the estimated travel time to each destination in seconds, in the 
+   *     same order as the destinations, or Double.NaN if a destination could 
+   *     not be found.
+   */
+  private double[] estimateTravelTimesInSeconds(String origin, 
+      List<String> destinations) throws IOException {
+    double[] travelTimes = new double[destinations.size()];
+    double[] originCoordinates = GeoUtility.parseCoordinates(origin);
+    List<String> unmeasuredDestinations = new ArrayList<String>();
+    List<Integer> unmeasuredIndices = new ArrayList<Integer>();
+    for (int i = 0; i < destinations.size(); i++) {
+      double[] destinationCoordinates = 
+          GeoUtility.parseCoordinates(destinations.get(i));
+      if (originCoordinates != null && destinationCoordinates != null) {
+        travelTimes[i] = GeoUtility.distanceInMeters(originCoordinates[0], 
+            originCoordinates[1], destinationCoordinates[0], 
+            destinationCoordinates[1]) / AVERAGE_SPEED;
+      } else {
+        unmeasuredDestinations.add(destinations.get(i));
+        unmeasuredIndices.add(i);
+      }
+    }
+
+    if (!unmeasuredDestinations.isEmpty()) {
+      double[] distances = 
+          estimator.getDistancesInMeters(origin, unmeasuredDestinations);
+      for (int i = 0; i < distances.length; i++) {
+        travelTimes[unmeasuredIndices.get(i)] = distances[i] / AVERAGE_SPEED;
+      }
+    }
+
+    return travelTimes;
+  }
+
+  /**
+   * Requests the travel times of the most requested pairs for the current 
+   *     time bucket and stores them in the caches. Run at the start of each 
+   *     bucket.
+   *
+   * @param datastore the DatastoreService that connects to the back end.
+   * @return the number of pairs that were refreshed.
+   */
+  public int refresh(DatastoreService datastore) throws IOException {
+    long now = System.currentTimeMillis();
+    Query query = new Query(PAIR_KIND).setFilter(new FilterPredicate(
+        "lastRequested", FilterOperator.GREATER_THAN_OR_EQUAL, 
+        now - REFRESH_WINDOW));
+    List<Entity> pairEntities = datastore.prepare(query).asList(
+        FetchOptions.Builder.withChunkSize(MAX_BATCH_SIZE));
+
+    // Add the requests counted since the last refresh to each pair, one 
+    //     batch at a time
+    long[] requests = new long[pairEntities.size()];
+    for (int start = 0; start < pairEntities.size(); start += MAX_BATCH_SIZE) {
+      int end = Math.min(start + MAX_BATCH_SIZE, pairEntities.size());
+      List<String> hitKeys = new ArrayList<String>();
+      for (Entity pairEntity : pairEntities.subList(start, end)) {
+        hitKeys.add(HITS_PREFIX + pairEntity.getKey().getName());
+      }
+      Map<String, Object> hits = memcache.getAll(hitKeys);
+      memcache.deleteAll(hits.keySet());
+
+      List<Entity> updatedPairEntities = new ArrayList<Entity>();
+      for (int i = start; i < end; i++) {
+        Entity pairEntity = pairEntities.get(i);
+        requests[i] = (long) pairEntity.getProperty("requests");
+        Object pairHits = hits.get(hitKeys.get(i - start));
+        if (pairHits instanceof Number 
+            && ((Number) pairHits).longValue() > 0) {
+          requests[i] += ((Number) pairHits).longValue();
+          pairEntity.setProperty("requests", requests[i]);
+          pairEntity.setProperty("lastRequested", now);
+          updatedPairEntities.add(pairEntity);
+        }
+      }
+      datastore.put(updatedPairEntities);
+    }
+
+    // Refresh the most requested pairs, one request per origin
+    LinkedHashMap<String, List<String>> destinationsByOrigin = 
+        new LinkedHashMap<String, List<String>>();
+    for (Entity pairEntity : TopK.select(pairEntities, requests, 
+        MAX_REFRESH_PAIRS)) {
+      String origin = (String) pairEntity.getProperty("origin");
+      if (!destinationsByOrigin.containsKey(origin)) {
+        destinationsByOrigin.put(origin, new ArrayList<String>());
+      }
+      destinationsByOrigin.get(origin).add(
+          (String) pairEntity.getProperty("destination"));
+    }
+
+    String bucket = getBucket(now);
+    int refreshedCount = 0;
+    for (Map.Entry<String, List<String>> entry : 
+        destinationsByOrigin.entrySet()) {
+      double[] travelTimes = client.getTravelTimesInSeconds(entry.getKey(), 
+          entry.getValue());
+      Map<String, Double> newTravelTimes = new HashMap<String, Double>();
+      for (int i = 0; i < travelTimes.length; i++) {
+        if (!Double.isNaN(travelTimes[i])) {
+          String key = createKey(bucket, 
+              createPair(entry.getKey(), entry.getValue().get(i)));
+          localCache.put(key, travelTimes[i]);
+          newTravelTimes.put(key, travelTimes[i]);
+        }
+      }
+      memcache.putAll(newTravelTimes, 
+          Expiration.byDeltaSeconds(TIME_TO_LIVE_SECONDS));
+      refreshedCount += newTravelTimes.size();
+    }
+
+    return refreshedCount;
+  }
+
+  /**
+   * Returns the time bucket of a time, like "weekday-16" for 8:00 to 8:30 on 
+   *     a weekday.
+   *
+   * @param millis the time in milliseconds since the epoch.
+   * @return the time bucket.
+   */
+  static String getBucket(long millis) {
+    Calendar calendar = Calendar.getInstance(BUCKET_TIME_ZONE);
+    calendar.setTimeInMillis(millis);
+    int dayOfWeek = calendar.get(Calendar.DAY_OF_WEEK);
+    int minuteOfDay = calendar.get(Calendar.HOUR_OF_DAY) * 60 
+        + calendar.get(Calendar.MINUTE);
+
+    String day = "weekday";
+    if (dayOfWeek == Calendar.SATURDAY || dayOfWeek == Calendar.SUNDAY) {
+      day = "weekend";
+    }
+
+    return day + "-" + (minuteOfDay / BUCKET_MINUTES);
+  }
+
+  /**
+   * Records pairs that searches requested but were not cached, so that they 
+   *     are refreshed. Their requests are counted in memcache and added by 
+   *     refresh. Called from the task queue (see RecordTravelPairs).
+   *
+   * @param datastore the DatastoreService that connects to the back end.
+   * @param origin the location traveled from.
+   * @param destinations the locations traveled to.
+   */
+  public static void recordPairs(DatastoreService datastore, String origin, 
+      List<String> destinations) {
+    List<Key> keys = new ArrayList<Key>();
+    List<String> recordedDestinations = new ArrayList<String>();
+    for (String destination : destinations) {
+      String pair = createPair(origin, destination);
+      if (pair.length() <= MAX_PAIR_LENGTH) {
+        keys.add(KeyFactory.createKey(PAIR_KIND, pair));
+        recordedDestinations.add(destination);
+      }
+    }
+    Map<Key, Entity> pairEntities = datastore.get(keys);
+
+    long now = System.currentTimeMillis();
+    List<Entity> updatedPairEntities = new ArrayList<Entity>();
+    for (int i = 0; i < keys.size(); i++) {
+      Entity pairEntity = pairEntities.get(keys.get(i));
+      if (pairEntity == null) {
+        pairEntity = new Entity(keys.get(i));
+        pairEntity.setProperty("origin", origin);
+        pairEntity.setProperty("destination", recordedDestinations.get(i));
+        pairEntity.setProperty("requests", 0L);
+      }
+      pairEntity.setProperty("lastRequested", now);
+      updatedPairEntities.add(pairEntity);
+    }
+    datastore.put(updatedPairEntities);
+  }
+
+  private static String createKey(String bucket, String pair) {
+    return KEY_PREFIX + bucket + ":" + pair;
+  }
+
+  /**
+   * Creates the pair of an origin and a destination. Locations that only 
+   *     differ in case or spacing make the same pair.
+   *
+   * @param origin the location traveled from.
+   * @param destination the location traveled to.
+   * @return the pair.
+   */
+  private static String createPair(String origin, String destination) {
+    return GeoUtility.normalizeLocation(origin) + "|" 
+        + GeoUtility.normalizeLocation(destination);
+  }
+}
@@ -0,0 +1,96 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.utility;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded in-process cache that evicts the least recently used entry when 
+ *     it is full and treats entries older than a time to live as missing.
+ * Safe to share between requests.
+ */
+public final class TtlLruCache<K, V> {
+
+  private final long timeToLiveMillis;
+  private final LinkedHashMap<K, Entry<V>> entries;
+
+  private static final class Entry<V> {
+    private final V value;
+    private final long expiresAtMillis;
+
+    private Entry(V value, long expiresAtMillis) {
+      this.value = value;
+      this.expiresAtMillis = expiresAtMillis;
+    }
+  }
+
+  /**
+   * Creates an empty cache.
+   *
+   * @param maxEntries the maximum number of entries the cache holds.
+   * @param timeToLiveMillis how long an entry stays in the cache.
+   */
+  public TtlLruCache(final int maxEntries, long timeToLiveMillis) {
+    this.timeToLiveMillis = timeToLiveMillis;
+    // Access order keeps the least recently used entry first
+    this.entries = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+        return size() > maxEntries;
+      }
+    };
+  }
+
+  /**
+   * Returns the value of a key if it is in the cache and has not expired.
+   *
+   * @param key the key to look up.
+   * @return the value or null if there is none.
+   */
+  public synchronized V get(K key) {
+    Entry<V> entry = entries.get(key);
+    if (entry == null) {
+      return null;
+    }
+
+    if (entry.expiresAtMillis < System.currentTimeMillis()) {
+      entries.remove(key);
+      return null;
+    }
+
+    return entry.value;
+  }
+
+  /**
+   * Stores the value of a key until it expires or is evicted.
+   *
+   * @param key the key to store the value under.
+   * @param value the value to store.
+   */
+  public synchronized void put(K key, V value) {
+    entries.put(key, new Entry<V>(value, 
+        System.currentTimeMillis() + timeToLiveMillis));
+  }
+
+  /**
+   * Removes the value of a key.
+   *
+   * @param key the key to remove.
+   */
+  public synchronized void remove(K key) {
+    entries.remove(key);
+  }
+}
@@ -18,6 +18,7 @@ import com.google.appengine.api.datastore.DatastoreService;
 import com.google.appengine.api.datastore.Entity;
 import com.google.appengine.api.datastore.KeyFactory;
 import com.google.appengine.api.users.UserService;
+import com.google.sps.filter.KeywordFilter;
 import com.google.sps.utility.ListingConstants;
 import com.google.sps.utility.ValidateInput;
 import javax.servlet.http.HttpServletRequest;
@@ -90,6 +91,8 @@ public class UpdateListingUtility {
 
     String website = ValidateInput.getParameter(request, "website", "");
 
+    String previousLocation = (String) entity.getProperty("location");
+
     /**
      * Mandatory fields:
      * If length of the property value is 0 and the property value is the
@@ -105,5 +108,15 @@ public class UpdateListingUtility {
     
     // Optional fields:
     entity.setProperty("website", website);
+
+    // The name and tags may have changed
+    KeywordFilter.indexKeywords(entity);
+
+    // Only look up the coordinates again if the location changed
+    boolean locationChanged = !entity.getProperty("location").equals(
+        previousLocation);
+    if (locationChanged || !entity.hasProperty(Geocoder.LATITUDE_PROPERTY)) {
+      Geocoder.updateCoordinates(entity);
+    }
   }
 }
@@ -0,0 +1,389 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.google.sps.utility;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Transaction;
+import com.google.appengine.api.datastore.TransactionOptions;
+import com.google.appengine.api.memcache.Expiration;
+import com.google.appengine.api.memcache.MemcacheService;
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
+import com.google.appengine.api.taskqueue.QueueFactory;
+import com.google.appengine.api.taskqueue.TaskOptions;
+import com.google.sps.data.Listing;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Logger;
+
+/**
+ * Spreads the votes of a listing over counter shards, so that many users can 
+ *     vote on the same listing at the same time. An entity group can only be 
+ *     written about once a second, so a single count on the listing Entity 
+ *     limits how fast a popular listing can be voted on.
+ * A listing starts with one shard that holds its votes so far. The number of 
+ *     shards doubles, up to MAX_SHARDS, whenever the listing gets more votes 
+ *     a minute than its shards can take.
+ * Each change in votes goes to a random shard.
+ * The shards are summed into the listing Entity a few seconds after a vote, 
+ *     so that queries that sort or filter by votes see them.
+ */
+public final class VoteCounter {
+
+  public static final String SHARD_KIND = "VoteCounterShard";
+  public static final String CONFIG_KIND = "VoteCounterConfig";
+
+  // The most shards a listing can have, so that summing them stays one small 
+  //     batch get
+  static final int MAX_SHARDS = 16;
+  // The number of votes a minute each shard can take
+  private static final int WRITES_PER_SHARD_PER_MINUTE = 60;
+  // How long after a vote its shards are summed into the listing Entity
+  private static final int FOLD_DELAY_MILLIS = 5000;
+  // How long summed votes are cached
+  private static final int COUNTS_EXPIRATION_SECONDS = 60;
+
+  private static final String COUNTS_KEY_PREFIX = "vote-counts:";
+  private static final String WRITES_KEY_PREFIX = "vote-writes:";
+  private static final String FOLD_KEY_PREFIX = "vote-fold:";
+
+  private static final Logger logger = 
+      Logger.getLogger(VoteCounter.class.getName());
+
+  /**
+   * Returns the key of the Entity that holds the number of shards of a 
+   *     listing.
+   *
+   * @param listingKey the key of the listing Entity.
+   * @return the key of the listing's config Entity.
+   */
+  public static Key getConfigKey(Key listingKey) {
+    return KeyFactory.createKey(CONFIG_KIND, 
+        KeyFactory.keyToString(listingKey));
+  }
+
+  /**
+   * Returns the key of a shard of a listing.
+   *
+   * @param listingKey the key of the listing Entity.
+   * @param index the index of the shard.
+   * @return the key of the shard Entity.
+   */
+  public static Key getShardKey(Key listingKey, int index) {
+    return KeyFactory.createKey(SHARD_KIND, 
+        KeyFactory.keyToString(listingKey) + "#" + index);
+  }
+
+  /**
+   * Gets a random shard of a listing inside a transaction. If the listing has 
+   *     no shards yet, its first shard and config are created from the 
+   *     listing Entity and the config is added to newEntities, so that it is 
+   *     written with the votes.
+   *
+   * @param datastore the DatastoreService that connects to the back end.
+   * @param transaction the transaction of the votes.
+   * @param config the config Entity of the listing, or null if the listing 
+   *     has no shards yet.
+   * @param listingKey the key of the listing Entity.
+   * @param newEntities the Entities that have to be written with the votes.
+   * @return the shard Entity to add the votes to.
+   */
+  static Entity getShard(DatastoreService datastore, Transaction transaction, 
+      Entity config, Key listingKey, List<Entity> newEntities) 
+      throws Exception {
+    try {
+      if (config != null) {
+        int index = ThreadLocalRandom.current().nextInt(getShardCount(config));
+        return datastore.get(transaction, getShardKey(listingKey, index));
+      }
+
+      Entity listingEntity = datastore.get(transaction, listingKey);
+      config = new Entity(getConfigKey(listingKey));
+      config.setProperty("shards", 1L);
+      Entity shard = createShard(listingKey, 0);
+      shard.setProperty("upvotes", listingEntity.getProperty("upvotes"));
+      shard.setProperty("downvotes", listingEntity.getProperty("downvotes"));
+      newEntities.add(config);
+
+      return shard;
+    } catch (EntityNotFoundException e) {
+      throw new Exception("Listing does not exist.");
+    }
+  }
+
+  /**
+   * Called after a vote is written to a shard. Clears the cached votes of 
+   *     the listing, adds shards if the listing is voted on faster than its 
+   *     shards can take, and schedules summing the shards into the listing.
+   *
+   * @param datastore the DatastoreService that connects to the back end.
+   * @param listingKey the key of the listing Entity.
+   * @param shardCount the number of shards the vote was written to.
+   */
+  static void recordWrite(DatastoreService datastore, Key listingKey, 
+      int shardCount) {
+    String listingKeyString = KeyFactory.keyToString(listingKey);
+    MemcacheService memcache = MemcacheServiceFactory.getMemcacheService();
+    memcache.delete(COUNTS_KEY_PREFIX + listingKeyString);
+
+    // Votes are counted per minute, and the shards are added once, when the 
+    //     count first goes over what the shards can take
+    long minute = System.currentTimeMillis() / (60 * 1000);
+    Long writes = memcache.increment(
+        WRITES_KEY_PREFIX + listingKeyString + ":" + minute, 1L, 0L);
+    if (writes != null && shardCount < MAX_SHARDS 
+        && writes == (long) shardCount * WRITES_PER_SHARD_PER_MINUTE + 1) {
+      addShards(datastore, listingKey, shardCount);
+    }
+
+    scheduleFold(listingKeyString);
+  }
+
+  /**
+   * Doubles the number of shards of a listing. The new shards start with no 
+   *     votes. Nothing changes if the listing no longer has shardCount 
+   *     shards.
+   *
+   * @param datastore the DatastoreService that connects to the back end.
+   * @param listingKey the key of the listing Entity.
+   * @param shardCount the number of shards the listing has.
+   */
+  private static void addShards(DatastoreService datastore, Key listingKey, 
+      int shardCount) {
+    Transaction transaction = 
+        datastore.beginTransaction(TransactionOptions.Builder.withXG(true));
+    try {
+      Entity config = datastore.get(transaction, getConfigKey(listingKey));
+      if (getShardCount(config) != shardCount) {
+        return;
+      }
+
+      // Shards left from an earlier config can still hold votes, so only 
+      //     the missing ones are created
+      int newShardCount = shardCount * 2;
+      List<Key> shardKeys = new ArrayList<Key>();
+      for (int i = shardCount; i < newShardCount; i++) {
+        shardKeys.add(getShardKey(listingKey, i));
+      }
+      Map<Key, Entity> existingShards = datastore.get(transaction, shardKeys);
+      List<Entity> shards = new ArrayList<Entity>();
+      for (int i = shardCount; i < newShardCount; i++) {
+        if (!existingShards.containsKey(getShardKey(listingKey, i))) {
+          shards.add(createShard(listingKey, i));
+        }
+      }
+      datastore.put(transaction, shards);
+
+      config.setProperty("shards", (long) newShardCount);
+      datastore.put(transaction, config);
+      transaction.commit();
+      logger.info("Listing " + KeyFactory.keyToString(listingKey) 
+          + " now has " + newShardCount + " vote shards");
+    } catch (EntityNotFoundException | ConcurrentModificationException e) {
+      logger.warning("Could not add vote shards: " + e.getMessage());
+    } finally {
+      if (transaction.isActive()) {
+        transaction.rollback();
+      }
+    }
+  }
+
+  /**
+   * Schedules summing the shards of a listing into the listing Entity. 
+   *     Votes in the next FOLD_DELAY_MILLIS are summed by the same task.
+   *
+   * @param listingKeyString the key String of the listing Entity.
+   */
+  private static void scheduleFold(String listingKeyString) {
+    MemcacheService memcache = MemcacheServiceFactory.getMemcacheService();
+    boolean isScheduled = !memcache.put(FOLD_KEY_PREFIX + listingKeyString, 
+        true, Expiration.byDeltaMillis(FOLD_DELAY_MILLIS), 
+        MemcacheService.SetPolicy.ADD_ONLY_IF_NOT_PRESENT);
+    if (isScheduled) {
+      return;
+    }
+
+    QueueFactory.getDefaultQueue().add(
+        TaskOptions.Builder.withUrl("/fold-vote-counts")
+            .param("key", listingKeyString)
+            .countdownMillis(FOLD_DELAY_MILLIS));
+  }
+
+  /**
+   * Sums the shards of a listing into the upvotes, downvotes, and reputation 
+   *     score of the listing Entity. Does nothing if the 
+   *     listing has no shards. The shards are read in the same transaction 
+   *     as the listing, so a vote that commits in between makes the fold 
+   *     fail and be retried instead of writing stale sums.
+   *
+   * @param datastore the DatastoreService that connects to the back end.
+   * @param listingKey the key of the listing Entity.
+   */
+  public static void fold(DatastoreService datastore, Key listingKey) 
+      throws Exception {
+    // The config, MAX_SHARDS shards, and the listing are within the entity 
+    //     group limit of a cross-group transaction
+    Transaction transaction = 
+        datastore.beginTransaction(TransactionOptions.Builder.withXG(true));
+    long upvotes = 0;
+    long downvotes = 0;
+    try {
+      Map<Key, Entity> shards = 
+          getAllShards(datastore, transaction, listingKey);
+      if (shards == null) {
+        return;
+      }
+
+      for (Entity shard : shards.values()) {
+        upvotes += ((Number) shard.getProperty("upvotes")).longValue();
+        downvotes += ((Number) shard.getProperty("downvotes")).longValue();
+      }
+
+      // The listing can be edited at the same time, so only the votes are 
+      //     changed
+      Entity listingEntity = datastore.get(transaction, listingKey);
+      listingEntity.setProperty("upvotes", upvotes);
+      listingEntity.setProperty("downvotes", downvotes);
+      Listing.updateReputationScore(listingEntity);
+      datastore.put(transaction, listingEntity);
+      transaction.commit();
+    } catch (EntityNotFoundException e) {
+      // The listing was deleted after it was voted on
+      return;
+    } finally {
+      if (transaction.isActive()) {
+        transaction.rollback();
+      }
+    }
+
+    MemcacheServiceFactory.getMemcacheService().put(
+        COUNTS_KEY_PREFIX + KeyFactory.keyToString(listingKey), 
+        new long[] {upvotes, downvotes}, 
+        Expiration.byDeltaSeconds(COUNTS_EXPIRATION_SECONDS));
+  }
+
+  /**
+   * Sets the upvotes and downvotes of a listing Entity to the sum of its 
+   *     shards, which can be newer than the Entity, and updates its 
+   *     reputation score to match. The Entity is not written. The sums are 
+   *     cached.
+   *
+   * @param datastore the DatastoreService that connects to the back end.
+   * @param listingEntity the entity that represents a listing.
+   */
+  public static void applyVoteCounts(DatastoreService datastore, 
+      Entity listingEntity) {
+    String countsKey = 
+        COUNTS_KEY_PREFIX + KeyFactory.keyToString(listingEntity.getKey());
+    MemcacheService memcache = MemcacheServiceFactory.getMemcacheService();
+    Object cachedCounts = memcache.get(countsKey);
+    long[] counts;
+    if (cachedCounts instanceof long[]) {
+      counts = (long[]) cachedCounts;
+    } else {
+      Map<Key, Entity> shards = 
+          getAllShards(datastore, null, listingEntity.getKey());
+      if (shards == null) {
+        return;
+      }
+
+      counts = new long[2];
+      for (Entity shard : shards.values()) {
+        counts[0] += ((Number) shard.getProperty("upvotes")).longValue();
+        counts[1] += ((Number) shard.getProperty("downvotes")).longValue();
+      }
+      memcache.put(countsKey, counts, 
+          Expiration.byDeltaSeconds(COUNTS_EXPIRATION_SECONDS));
+    }
+
+    listingEntity.setProperty("upvotes", counts[0]);
+    listingEntity.setProperty("downvotes", counts[1]);
+    Listing.updateReputationScore(listingEntity);
+  }
+
+  /**
+   * Deletes the shards and config of a listing.
+   *
+   * @param datastore the DatastoreService that connects to the back end.
+   * @param listingKey the key of the listing Entity.
+   */
+  public static void delete(DatastoreService datastore, Key listingKey) {
+    List<Key> keys = new ArrayList<Key>();
+    keys.add(getConfigKey(listingKey));
+    for (int i = 0; i < MAX_SHARDS; i++) {
+      keys.add(getShardKey(listingKey, i));
+    }
+    datastore.delete(keys);
+    MemcacheServiceFactory.getMemcacheService().delete(
+        COUNTS_KEY_PREFIX + KeyFactory.keyToString(listingKey));
+  }
+
+  /**
+   * Gets all of the shards of a listing in one batch.
+   *
+   * @param datastore the DatastoreService that connects to the back end.
+   * @param transaction the transaction to read in, or null for none.
+   * @param listingKey the key of the listing Entity.
+   * @return the shards of the listing, or null if it has none.
+   */
+  private static Map<Key, Entity> getAllShards(DatastoreService datastore, 
+      Transaction transaction, Key listingKey) {
+    Entity config;
+    try {
+      config = datastore.get(transaction, getConfigKey(listingKey));
+    } catch (EntityNotFoundException e) {
+      return null;
+    }
+
+    List<Key> shardKeys = new ArrayList<Key>();
+    for (int i = 0; i < getShardCount(config); i++) {
+      shardKeys.add(getShardKey(listingKey, i));
+    }
+
+    return datastore.get(transaction, shardKeys);
+  }
+
+  /**
+   * Returns the number of shards in a config Entity.
+   *
+   * @param config the config Entity of a listing.
+   * @return the number of shards of the listing.
+   */
+  static int getShardCount(Entity config) {
+    return ((Number) config.getProperty("shards")).intValue();
+  }
+
+  /**
+   * Creates a shard with no votes.
+   *
+   * @param listingKey the key of the listing Entity.
+   * @param index the index of the shard.
+   * @return the new shard Entity.
+   */
+  private static Entity createShard(Key listingKey, int index) {
+    Entity shard = new Entity(getShardKey(listingKey, index));
+    shard.setProperty("upvotes", 0L);
+    shard.setProperty("downvotes", 0L);
+
+    return shard;
+  }
+}
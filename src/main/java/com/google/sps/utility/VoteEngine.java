@@ -0,0 +1,205 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.utility;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.Transaction;
+import com.google.appengine.api.datastore.TransactionOptions;
+import com.google.sps.data.Vote;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Processes users' votes on a listing. The users, their vote Entities (see 
+ *     Vote), and the listing's config are read in one batch, and the changed 
+ *     votes and one of the listing's vote shards (see VoteCounter) are 
+ *     written inside a cross-group transaction, so that votes at the same 
+ *     time do not overwrite each other.
+ */
+public final class VoteEngine {
+
+  // The number of times a vote is tried if another vote changed the user or 
+  //     the shard first
+  private static final int MAX_ATTEMPTS = 3;
+  // The most users that can vote in one transaction. Each user adds their 
+  //     entity group, which holds their votes.
+  public static final int MAX_USERS_PER_TRANSACTION = 8;
+
+  /**
+   * Changes a user's vote on a listing.
+   *
+   * @param datastore the DatastoreService that connects to the back end.
+   * @param userKey the key of the user Entity that is voting.
+   * @param listingKey the key of the listing Entity being voted on.
+   * @param vote the new vote, which is "upvote", "downvote", or "neutral".
+   */
+  public static void processVote(DatastoreService datastore, Key userKey, 
+      Key listingKey, String vote) throws Exception {
+    processVotes(datastore, listingKey, 
+        Collections.singletonMap(userKey, vote), Collections.<Key>emptyList());
+  }
+
+  /**
+   * Changes the votes of users on a listing in one transaction. The changes 
+   *     in the listing's upvotes and downvotes are added to one of its 
+   *     shards, which is not written if they cancel out.
+   * At most MAX_USERS_PER_TRANSACTION users can vote at once, so that the 
+   *     transaction stays under the limit of 25 entity groups.
+   * The journaled votes that are applied (see VoteJournal) are read again 
+   *     and deleted in the same transaction. A user whose journaled votes 
+   *     are no longer all there was already applied by another flush, so 
+   *     their vote is skipped.
+   *
+   * @param datastore the DatastoreService that connects to the back end.
+   * @param listingKey the key of the listing Entity being voted on.
+   * @param votes the new vote of each user by user key.
+   * @param journalKeys the keys of the users' journaled votes on the listing.
+   * @return the number of journaled votes that were deleted.
+   */
+  public static int processVotes(DatastoreService datastore, Key listingKey, 
+      Map<Key, String> votes, List<Key> journalKeys) throws Exception {
+    if (votes.size() > MAX_USERS_PER_TRANSACTION) {
+      throw new IllegalArgumentException("Too many votes in one transaction");
+    }
+
+    Key configKey = VoteCounter.getConfigKey(listingKey);
+    for (int attempt = 1; ; attempt++) {
+      Transaction transaction = datastore.beginTransaction(
+          TransactionOptions.Builder.withXG(true));
+      try {
+        List<Key> keys = new ArrayList<Key>();
+        for (Key userKey : votes.keySet()) {
+          keys.add(userKey);
+          keys.add(Vote.createKey(userKey, listingKey));
+        }
+        keys.add(configKey);
+        keys.addAll(journalKeys);
+        Map<Key, Entity> entities = datastore.get(transaction, keys);
+        for (Key userKey : votes.keySet()) {
+          if (entities.get(userKey) == null) {
+            throw new Exception("User does not exist.");
+          }
+        }
+
+        Set<Key> appliedUserKeys = new HashSet<Key>();
+        for (Key journalKey : journalKeys) {
+          if (!entities.containsKey(journalKey)) {
+            appliedUserKeys.add(journalKey.getParent());
+          }
+        }
+
+        List<Entity> changedEntities = new ArrayList<Entity>();
+        List<Key> deletedEntityKeys = new ArrayList<Key>();
+        for (Key journalKey : journalKeys) {
+          if (!appliedUserKeys.contains(journalKey.getParent())) {
+            deletedEntityKeys.add(journalKey);
+          }
+        }
+        int deletedJournalCount = deletedEntityKeys.size();
+        long upvotesDelta = 0;
+        long downvotesDelta = 0;
+        for (Map.Entry<Key, String> vote : votes.entrySet()) {
+          if (appliedUserKeys.contains(vote.getKey())) {
+            continue;
+          }
+
+          Key voteKey = Vote.createKey(vote.getKey(), listingKey);
+          String previousVote = Vote.getVote(entities.get(voteKey));
+          String newVote = vote.getValue();
+          if (previousVote.equals(newVote)) {
+            continue;
+          }
+
+          upvotesDelta += getCount(newVote, "upvote") 
+              - getCount(previousVote, "upvote");
+          downvotesDelta += getCount(newVote, "downvote") 
+              - getCount(previousVote, "downvote");
+          if (newVote.equals("neutral")) {
+            deletedEntityKeys.add(voteKey);
+          } else {
+            changedEntities.add(
+                Vote.createVoteEntity(vote.getKey(), listingKey, newVote));
+          }
+        }
+        if (changedEntities.isEmpty() && deletedEntityKeys.isEmpty()) {
+          return 0;
+        }
+
+        boolean isCountChanged = upvotesDelta != 0 || downvotesDelta != 0;
+        if (isCountChanged) {
+          Entity shard = VoteCounter.getShard(datastore, transaction, 
+              entities.get(configKey), listingKey, changedEntities);
+          addToCount(shard, "upvotes", upvotesDelta);
+          addToCount(shard, "downvotes", downvotesDelta);
+          changedEntities.add(shard);
+        }
+
+        if (!changedEntities.isEmpty()) {
+          datastore.put(transaction, changedEntities);
+        }
+        if (!deletedEntityKeys.isEmpty()) {
+          datastore.delete(transaction, deletedEntityKeys);
+        }
+        transaction.commit();
+        if (isCountChanged) {
+          Entity config = entities.get(configKey);
+          VoteCounter.recordWrite(datastore, listingKey, 
+              config == null ? 1 : VoteCounter.getShardCount(config));
+        }
+        return deletedJournalCount;
+      } catch (ConcurrentModificationException e) {
+        if (attempt == MAX_ATTEMPTS) {
+          throw e;
+        }
+      } finally {
+        if (transaction.isActive()) {
+          transaction.rollback();
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns how much a vote adds to a count.
+   *
+   * @param vote the vote, which is "upvote", "downvote", or "neutral".
+   * @param countedVote the vote that is counted.
+   * @return 1 if vote is countedVote, 0 otherwise.
+   */
+  private static long getCount(String vote, String countedVote) {
+    return vote.equals(countedVote) ? 1 : 0;
+  }
+
+  /**
+   * Adds to a count property of a vote shard. The counts of a shard can be 
+   *     negative, since only their sum over all of the listing's shards is 
+   *     used.
+   *
+   * @param shard the vote shard of a listing.
+   * @param property the name of the count property.
+   * @param delta the amount to add.
+   */
+  private static void addToCount(Entity shard, String property, long delta) {
+    long count = ((Number) shard.getProperty(property)).longValue();
+    shard.setProperty(property, count + delta);
+  }
+}
@@ -0,0 +1,302 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.google.sps.utility;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.memcache.Expiration;
+import com.google.appengine.api.memcache.MemcacheService;
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
+import com.google.appengine.api.taskqueue.QueueFactory;
+import com.google.appengine.api.taskqueue.TaskOptions;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * Write-behind voting. Instead of changing the user's vote and the 
+ *     listing's shard while the user waits, a vote is only appended to the 
+ *     journal, and the journaled votes are applied a few seconds later in 
+ *     batches. A user that changes their vote many times before the batch 
+ *     only changes their vote and the shard once.
+ * Each journaled vote is a child of the user that voted, so that a user's 
+ *     votes are read in order and deleted in the transaction that applies 
+ *     them.
+ * Turned on by setting the system property WRITE_BEHIND_PROPERTY to "true".
+ */
+public final class VoteJournal {
+
+  public static final String WRITE_BEHIND_PROPERTY = "vote.write-behind";
+  public static final String KIND = "VoteJournal";
+
+  // How long after a vote the journal is flushed
+  private static final int FLUSH_DELAY_MILLIS = 5000;
+  // The most journaled votes read in one flush
+  private static final int MAX_VOTES_PER_FLUSH = 500;
+
+  private static final String FLUSH_KEY = "vote-journal-flush";
+
+  private static final Logger logger = 
+      Logger.getLogger(VoteJournal.class.getName());
+
+  /**
+   * Returns true if votes are journaled instead of applied right away.
+   *
+   * @return a boolean that states whether write-behind voting is on.
+   */
+  public static boolean isEnabled() {
+    return "true".equals(System.getProperty(WRITE_BEHIND_PROPERTY));
+  }
+
+  /**
+   * Appends a user's vote on a listing to the journal and schedules a flush.
+   *
+   * @param datastore the DatastoreService that connects to the back end.
+   * @param userKey the key of the user Entity that is voting.
+   * @param listingKey the key of the listing Entity being voted on.
+   * @param vote the new vote, which is "upvote", "downvote", or "neutral".
+   */
+  public static void append(DatastoreService datastore, Key userKey, 
+      Key listingKey, String vote) {
+    Entity journaledVote = new Entity(KIND, userKey);
+    journaledVote.setUnindexedProperty("listing", listingKey);
+    journaledVote.setUnindexedProperty("vote", vote);
+    journaledVote.setUnindexedProperty("timestamp", 
+        System.currentTimeMillis());
+    datastore.put(journaledVote);
+
+    scheduleFlush(FLUSH_DELAY_MILLIS);
+  }
+
+  /**
+   * Schedules a flush of the journal, unless one was scheduled in the last 
+   *     FLUSH_DELAY_MILLIS. Votes journaled until the flush runs are flushed 
+   *     by the same task.
+   *
+   * @param countdownMillis how long to wait before flushing.
+   */
+  private static void scheduleFlush(int countdownMillis) {
+    MemcacheService memcache = MemcacheServiceFactory.getMemcacheService();
+    boolean isScheduled = !memcache.put(FLUSH_KEY, true, 
+        Expiration.byDeltaMillis(FLUSH_DELAY_MILLIS), 
+        MemcacheService.SetPolicy.ADD_ONLY_IF_NOT_PRESENT);
+    if (isScheduled) {
+      return;
+    }
+
+    QueueFactory.getDefaultQueue().add(
+        TaskOptions.Builder.withUrl("/flush-votes")
+            .method(TaskOptions.Method.GET)
+            .countdownMillis(countdownMillis));
+  }
+
+  /**
+   * Applies journaled votes in batches. Each user's votes on a listing are 
+   *     applied in the order they were cast, and only the last one changes 
+   *     the user's vote and the listing's shard. The votes of up to 
+   *     VoteEngine.MAX_USERS_PER_TRANSACTION users on a listing are applied 
+   *     in one transaction, which deletes them from the journal.
+   * Votes that could not be applied because of other votes at the same time 
+   *     or a Datastore error stay in the journal for the next flush. Votes by 
+   *     users or on listings that no longer exist are dropped. Two flushes can read the 
+   *     same journaled votes, but since each transaction reads them again, 
+   *     only one of them applies a user's votes.
+   *
+   * @param datastore the DatastoreService that connects to the back end.
+   * @return the number of journaled votes that were applied or dropped.
+   */
+  public static int flush(DatastoreService datastore) {
+    // The query is eventually consistent, so it only finds which users have 
+    //     journaled votes. Each user's votes are then read with an ancestor 
+    //     query, which sees all of them.
+    Query journalQuery = new Query(KIND).setKeysOnly();
+    List<Entity> journalKeys = datastore.prepare(journalQuery).asList(
+        FetchOptions.Builder.withLimit(MAX_VOTES_PER_FLUSH));
+    Set<Key> userKeys = new LinkedHashSet<Key>();
+    for (Entity journaledVote : journalKeys) {
+      userKeys.add(journaledVote.getKey().getParent());
+    }
+
+    // The last vote and the journaled votes of each user by listing
+    Map<Key, Map<Key, String>> votesByListing = 
+        new LinkedHashMap<Key, Map<Key, String>>();
+    Map<Key, Map<Key, List<Key>>> journalKeysByListing = 
+        new LinkedHashMap<Key, Map<Key, List<Key>>>();
+    for (Key userKey : userKeys) {
+      for (Entity journaledVote : getJournaledVotes(datastore, userKey)) {
+        Key listingKey = (Key) journaledVote.getProperty("listing");
+        if (!votesByListing.containsKey(listingKey)) {
+          votesByListing.put(listingKey, new LinkedHashMap<Key, String>());
+          journalKeysByListing.put(listingKey, 
+              new LinkedHashMap<Key, List<Key>>());
+        }
+        votesByListing.get(listingKey).put(userKey, 
+            (String) journaledVote.getProperty("vote"));
+        Map<Key, List<Key>> userJournalKeys = 
+            journalKeysByListing.get(listingKey);
+        if (!userJournalKeys.containsKey(userKey)) {
+          userJournalKeys.put(userKey, new ArrayList<Key>());
+        }
+        userJournalKeys.get(userKey).add(journaledVote.getKey());
+      }
+    }
+
+    int flushedCount = 0;
+    for (Key listingKey : votesByListing.keySet()) {
+      Map<Key, String> votes = new LinkedHashMap<Key, String>();
+      List<Key> deletedKeys = new ArrayList<Key>();
+      for (Map.Entry<Key, String> vote : 
+          votesByListing.get(listingKey).entrySet()) {
+        votes.put(vote.getKey(), vote.getValue());
+        deletedKeys.addAll(
+            journalKeysByListing.get(listingKey).get(vote.getKey()));
+        if (votes.size() == VoteEngine.MAX_USERS_PER_TRANSACTION) {
+          flushedCount += applyVotes(datastore, listingKey, votes, 
+              deletedKeys, journalKeysByListing.get(listingKey));
+          votes = new LinkedHashMap<Key, String>();
+          deletedKeys = new ArrayList<Key>();
+        }
+      }
+      if (!votes.isEmpty()) {
+        flushedCount += applyVotes(datastore, listingKey, votes, deletedKeys, 
+            journalKeysByListing.get(listingKey));
+      }
+    }
+
+    // More votes were journaled than one flush reads
+    if (journalKeys.size() == MAX_VOTES_PER_FLUSH) {
+      scheduleFlush(0);
+    }
+
+    return flushedCount;
+  }
+
+  /**
+   * Applies the last journaled votes of users on a listing in one 
+   *     transaction. If that fails, the journaled votes of the users that no 
+   *     longer exist, or all of them if the listing no longer exists, are 
+   *     dropped and the other votes are tried again. Votes that fail for any 
+   *     other reason, like a Datastore timeout, stay journaled for the next 
+   *     flush.
+   *
+   * @param datastore the DatastoreService that connects to the back end.
+   * @param listingKey the key of the listing Entity being voted on.
+   * @param votes the last vote of each user by user key.
+   * @param deletedKeys the keys of the users' journaled votes on the listing.
+   * @param journalKeys the keys of the journaled votes on the listing by user 
+   *     key.
+   * @return the number of journaled votes that were applied or dropped.
+   */
+  private static int applyVotes(DatastoreService datastore, Key listingKey, 
+      Map<Key, String> votes, List<Key> deletedKeys, 
+      Map<Key, List<Key>> journalKeys) {
+    Exception applyException;
+    try {
+      return VoteEngine.processVotes(datastore, listingKey, votes, 
+          deletedKeys);
+    } catch (ConcurrentModificationException e) {
+      return 0;
+    } catch (Exception e) {
+      applyException = e;
+    }
+
+    // Check which of the entities the votes need no longer exist
+    Map<Key, Entity> existingEntities;
+    try {
+      List<Key> keys = new ArrayList<Key>(votes.keySet());
+      keys.add(listingKey);
+      existingEntities = datastore.get(keys);
+    } catch (RuntimeException e) {
+      logger.warning("Kept journaled votes on " 
+          + KeyFactory.keyToString(listingKey) + ": " + e.getMessage());
+      return 0;
+    }
+
+    if (!existingEntities.containsKey(listingKey)) {
+      logger.warning("Dropped journaled votes on deleted listing " 
+          + KeyFactory.keyToString(listingKey));
+      datastore.delete(deletedKeys);
+      return deletedKeys.size();
+    }
+
+    Map<Key, String> remainingVotes = new LinkedHashMap<Key, String>();
+    List<Key> remainingKeys = new ArrayList<Key>();
+    List<Key> droppedKeys = new ArrayList<Key>();
+    for (Map.Entry<Key, String> vote : votes.entrySet()) {
+      if (existingEntities.containsKey(vote.getKey())) {
+        remainingVotes.put(vote.getKey(), vote.getValue());
+        remainingKeys.addAll(journalKeys.get(vote.getKey()));
+      } else {
+        droppedKeys.addAll(journalKeys.get(vote.getKey()));
+      }
+    }
+
+    if (droppedKeys.isEmpty()) {
+      logger.warning("Kept journaled votes on " 
+          + KeyFactory.keyToString(listingKey) + ": " 
+          + applyException.getMessage());
+      return 0;
+    }
+
+    logger.warning("Dropped journaled votes of deleted users on " 
+        + KeyFactory.keyToString(listingKey));
+    datastore.delete(droppedKeys);
+    int flushedCount = droppedKeys.size();
+    if (!remainingVotes.isEmpty()) {
+      flushedCount += applyVotes(datastore, listingKey, remainingVotes, 
+          remainingKeys, journalKeys);
+    }
+
+    return flushedCount;
+  }
+
+  /**
+   * Gets a user's journaled votes in the order they were cast.
+   *
+   * @param datastore the DatastoreService that connects to the back end.
+   * @param userKey the key of the user Entity.
+   * @return the user's journaled vote Entities, oldest first.
+   */
+  private static List<Entity> getJournaledVotes(DatastoreService datastore, 
+      Key userKey) {
+    // Sorted here instead of in the query, so that no index is needed
+    List<Entity> journaledVotes = new ArrayList<Entity>();
+    for (Entity journaledVote : 
+        datastore.prepare(new Query(KIND, userKey)).asIterable()) {
+      journaledVotes.add(journaledVote);
+    }
+    Collections.sort(journaledVotes, new Comparator<Entity>() {
+      @Override
+      public int compare(Entity a, Entity b) {
+        return Long.compare((long) a.getProperty("timestamp"), 
+            (long) b.getProperty("timestamp"));
+      }
+    });
+
+    return journaledVotes;
+  }
+}
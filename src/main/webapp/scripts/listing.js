@@ -92,16 +92,59 @@ function createListing(cardElementId, listing) {
   const cardElementDisplay = "flex";
 
   // Create listing preview
-  sectionListing.appendChild(createListingPreview(listing, cardElementDisplay, 
-      cardElementId, sectionListing));
+  const listingPreview = createListingPreview(listing, cardElementDisplay, 
+      cardElementId, sectionListing);
+  sectionListing.appendChild(listingPreview);
     
   // Create listing view (detiled view)
   sectionListing.appendChild(createListingDetailedView(listing, 
       cardElementDisplay, cardElementId));
 
+  // A card only has the fields shown on the preview, so fetch the rest of the 
+  //     listing the first time the detailed view is opened
+  if (listing.isCard) {
+    let isFetched = false;
+    const fetchDetails = () => {
+      if (!isFetched) {
+        isFetched = true;
+        fetchListingDetails(listing.key, cardElementDisplay, cardElementId);
+      }
+    };
+    listingPreview.addEventListener('click', fetchDetails);
+    listingPreview.addEventListener('keypress', function (e) {
+      if (e.key === 'Enter') {
+        fetchDetails();
+      }
+    });
+  }
+
   return sectionListing;
 }
 
+/**
+ * Fetches the whole listing and replaces the detailed view of a card with a 
+ *     detailed view that has all of the listing information.
+ *
+ * @param key the key of the listing.
+ * @param cardElementDisplay the display of the detailed view when it is open.
+ * @param cardElementId the id of the detailed view.
+ */
+function fetchListingDetails(key, cardElementDisplay, cardElementId) {
+  fetch('/fetch-listing-details?listing-key=' + key)
+      .then(response => response.json())
+      .then((listing) => {
+        if (isErrorMessage(listing)) {
+          displayErrorMessage(listing);
+        } else {
+          const cardElement = document.getElementById(cardElementId);
+          const detailedView = createListingDetailedView(listing, 
+              cardElementDisplay, cardElementId);
+          detailedView.style.display = cardElement.style.display;
+          cardElement.replaceWith(detailedView);
+        }
+      });
+}
+
 export {
   createListing,
   createListings,
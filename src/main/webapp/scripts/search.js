@@ -193,6 +193,7 @@ function getSearchParameters() {
   params += '&sortBy=' + sort;
   params += '&location=' + location;
   params += '&call=' + getCall();
+  params += '&view=card';
   location = '';
   return params;
 }
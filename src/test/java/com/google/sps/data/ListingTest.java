@@ -0,0 +1,87 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests the reputation score of a listing, which is the lower bound of the 
+ *     Wilson score interval of its fraction of upvotes.
+ */
+public class ListingTest {
+
+  private static final double DELTA = 1e-4;
+
+  @Test
+  public void noVotesScoresZero() {
+    assertEquals(0, Listing.computeReputationScore(0, 0), 0);
+  }
+
+  @Test
+  public void onlyDownvotesScoresZero() {
+    assertEquals(0, Listing.computeReputationScore(0, 1), 0);
+    assertEquals(0, Listing.computeReputationScore(0, 1000), 0);
+  }
+
+  @Test
+  public void negativeCountsScoreAsZero() {
+    assertEquals(0, Listing.computeReputationScore(-3, 2), 0);
+    assertEquals(Listing.computeReputationScore(4, 0), 
+        Listing.computeReputationScore(4, -2), 0);
+  }
+
+  @Test
+  public void onlyUpvotesScoresHigherWithMoreVotes() {
+    assertEquals(0.2065, Listing.computeReputationScore(1, 0), DELTA);
+    assertEquals(0.9630, Listing.computeReputationScore(100, 0), DELTA);
+    assertTrue(Listing.computeReputationScore(1, 0) 
+        < Listing.computeReputationScore(10, 0));
+    assertTrue(Listing.computeReputationScore(100, 0) < 1);
+  }
+
+  @Test
+  public void equalVotesScoreBelowOneHalf() {
+    double fewVotesScore = Listing.computeReputationScore(5, 5);
+    double manyVotesScore = Listing.computeReputationScore(1000, 1000);
+
+    assertEquals(0.2366, fewVotesScore, DELTA);
+    assertEquals(0.4781, manyVotesScore, DELTA);
+    assertTrue(fewVotesScore < manyVotesScore);
+  }
+
+  @Test
+  public void largeCountsStayBetweenZeroAndOne() {
+    double score = 
+        Listing.computeReputationScore(2000000000L, 1000000000L);
+
+    assertEquals(2.0 / 3, score, DELTA);
+    assertTrue(Listing.computeReputationScore(Long.MAX_VALUE / 2, 0) <= 1);
+  }
+
+  @Test
+  public void moreUpvotesNeverScoreLower() {
+    for (long downvotes : new long[] {0, 1, 10, 1000}) {
+      double previousScore = Listing.computeReputationScore(0, downvotes);
+      for (long upvotes = 1; upvotes <= 500; upvotes++) {
+        double score = Listing.computeReputationScore(upvotes, downvotes);
+        assertTrue(upvotes + "/" + downvotes, score > previousScore);
+        previousScore = score;
+      }
+    }
+  }
+}
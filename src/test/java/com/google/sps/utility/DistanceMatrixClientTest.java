@@ -0,0 +1,214 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.utility;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.appengine.api.urlfetch.HTTPHeader;
+import com.google.appengine.api.urlfetch.HTTPRequest;
+import com.google.appengine.api.urlfetch.HTTPResponse;
+import com.google.appengine.api.urlfetch.URLFetchService;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import org.junit.Test;
+
+/**
+ * Tests the DistanceMatrixClient against a stub URL Fetch service that 
+ *     answers like the Distance Matrix API.
+ */
+public class DistanceMatrixClientTest {
+
+  private static final String BASE_URL = 
+      "https://maps.example.com/distancematrix/json";
+  // The stub does not find this destination
+  private static final String MISSING_DESTINATION = "nowhere";
+
+  @Test
+  public void splitsDestinationsIntoBatches() throws IOException {
+    StubURLFetchService urlFetchService = 
+        new StubURLFetchService(200, "OK", false);
+    DistanceMatrixClient client = createClient(urlFetchService);
+
+    double[] distances = 
+        client.getDistancesInMeters("origin", createDestinations(30));
+
+    assertEquals(2, urlFetchService.destinationCounts.size());
+    assertEquals(DistanceMatrixClient.MAX_DESTINATIONS, 
+        (int) urlFetchService.destinationCounts.get(0));
+    assertEquals(5, (int) urlFetchService.destinationCounts.get(1));
+    assertEquals(30, distances.length);
+    for (int i = 0; i < distances.length; i++) {
+      assertEquals(i, distances[i], 0);
+    }
+  }
+
+  @Test
+  public void destinationThatIsNotFoundIsNaN() throws IOException {
+    List<String> destinations = createDestinations(3);
+    destinations.set(1, MISSING_DESTINATION);
+    DistanceMatrixClient client = 
+        createClient(new StubURLFetchService(200, "OK", false));
+
+    double[] distances = client.getDistancesInMeters("origin", destinations);
+
+    assertEquals(0, distances[0], 0);
+    assertTrue(Double.isNaN(distances[1]));
+    assertEquals(2, distances[2], 0);
+  }
+
+  @Test
+  public void travelTimesUseTheDurationInTraffic() throws IOException {
+    DistanceMatrixClient client = 
+        createClient(new StubURLFetchService(200, "OK", false));
+
+    double[] travelTimes = 
+        client.getTravelTimesInSeconds("origin", createDestinations(2));
+
+    assertEquals(10, travelTimes[0], 0);
+    assertEquals(11, travelTimes[1], 0);
+  }
+
+  @Test(expected = IOException.class)
+  public void errorStatusFails() throws IOException {
+    DistanceMatrixClient client = 
+        createClient(new StubURLFetchService(200, "REQUEST_DENIED", false));
+
+    client.getDistancesInMeters("origin", createDestinations(2));
+  }
+
+  @Test(expected = IOException.class)
+  public void errorResponseCodeFails() throws IOException {
+    DistanceMatrixClient client = 
+        createClient(new StubURLFetchService(500, "OK", false));
+
+    client.getDistancesInMeters("origin", createDestinations(2));
+  }
+
+  @Test(expected = IOException.class)
+  public void timeoutFails() throws IOException {
+    DistanceMatrixClient client = 
+        createClient(new StubURLFetchService(200, "OK", true));
+
+    client.getDistancesInMeters("origin", createDestinations(2));
+  }
+
+  private static DistanceMatrixClient createClient(
+      URLFetchService urlFetchService) {
+    return new DistanceMatrixClient(urlFetchService, BASE_URL, "key");
+  }
+
+  /**
+   * Creates destinations named by their index, which the stub returns as 
+   *     their distance.
+   *
+   * @param count the number of destinations.
+   * @return the destinations "0" to count - 1.
+   */
+  private static List<String> createDestinations(int count) {
+    List<String> destinations = new ArrayList<String>();
+    for (int i = 0; i < count; i++) {
+      destinations.add(String.valueOf(i));
+    }
+
+    return destinations;
+  }
+
+  /**
+   * Answers Distance Matrix requests. The distance to a destination is its 
+   *     name as a number, and the travel time in traffic is 10 more.
+   */
+  private static class StubURLFetchService implements URLFetchService {
+
+    // The number of destinations of each request, in the order they were sent
+    private final List<Integer> destinationCounts = new ArrayList<Integer>();
+    private final int responseCode;
+    private final String status;
+    private final boolean isTimingOut;
+
+    private StubURLFetchService(int responseCode, String status, 
+        boolean isTimingOut) {
+      this.responseCode = responseCode;
+      this.status = status;
+      this.isTimingOut = isTimingOut;
+    }
+
+    @Override
+    public HTTPResponse fetch(URL url) throws IOException {
+      return fetch(new HTTPRequest(url));
+    }
+
+    @Override
+    public HTTPResponse fetch(HTTPRequest request) throws IOException {
+      String query = request.getURL().getQuery();
+      String destinationsParameter = 
+          query.replaceFirst(".*destinations=", "").replaceFirst("&.*", "");
+      String[] destinations = destinationsParameter.split("%7C");
+      destinationCounts.add(destinations.length);
+
+      StringBuilder content = new StringBuilder();
+      content.append("{\"status\":\"").append(status);
+      content.append("\",\"rows\":[{\"elements\":[");
+      for (int i = 0; i < destinations.length; i++) {
+        if (i > 0) {
+          content.append(",");
+        }
+        if (destinations[i].equals(MISSING_DESTINATION)) {
+          content.append("{\"status\":\"NOT_FOUND\"}");
+          continue;
+        }
+
+        int distance = Integer.parseInt(destinations[i]);
+        content.append("{\"status\":\"OK\",\"distance\":{\"value\":")
+            .append(distance).append("},\"duration\":{\"value\":")
+            .append(distance + 5).append("},\"duration_in_traffic\":")
+            .append("{\"value\":").append(distance + 10).append("}}");
+      }
+      content.append("]}]}");
+
+      return new HTTPResponse(responseCode, 
+          content.toString().getBytes(StandardCharsets.UTF_8), 
+          request.getURL(), Collections.<HTTPHeader>emptyList());
+    }
+
+    @Override
+    public Future<HTTPResponse> fetchAsync(URL url) {
+      return fetchAsync(new HTTPRequest(url));
+    }
+
+    @Override
+    public Future<HTTPResponse> fetchAsync(HTTPRequest request) {
+      CompletableFuture<HTTPResponse> response = 
+          new CompletableFuture<HTTPResponse>();
+      try {
+        if (isTimingOut) {
+          throw new SocketTimeoutException("Deadline exceeded");
+        }
+        response.complete(fetch(request));
+      } catch (IOException e) {
+        response.completeExceptionally(e);
+      }
+
+      return response;
+    }
+  }
+}